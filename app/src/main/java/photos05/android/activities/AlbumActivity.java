@@ -3,52 +3,91 @@ import photos05.android.model.Photo;
 import photos05.android.model.Tag;
 
 import android.annotation.SuppressLint;
+import android.content.ClipData;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
-import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.Button;
-import android.widget.GridView;
-import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import android.content.DialogInterface;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 
 import photos05.android.R;
 import photos05.android.model.Album;
+import photos05.android.model.LibraryChange;
+import photos05.android.model.PhotoMetadata;
+import photos05.android.model.PhotoSortOrder;
 import photos05.android.model.User;
+import photos05.android.util.ColorIndex;
+import photos05.android.util.ColorSignature;
 import photos05.android.util.DataManager;
+import photos05.android.util.DateIndex;
+import photos05.android.util.DateRangeDialog;
+import photos05.android.util.ImportQueue;
+import photos05.android.util.LibraryChangeFeed;
+import photos05.android.util.LibraryIndexes;
+import photos05.android.util.MetadataExtractor;
+import photos05.android.util.PhotoGridAdapter;
+import photos05.android.util.SimilarityIndex;
+import photos05.android.util.TagIndex;
+import photos05.android.util.TagTypeField;
+import photos05.android.util.ThumbnailLoader;
 
 import java.io.IOException;
+import androidx.activity.OnBackPressedCallback;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
 public class AlbumActivity extends AppCompatActivity{
     private static final String TAG = "AlbumActivity";
-    private GridView gridView;
-    private ArrayAdapter<String> adapter;
-    private List<String> photoPaths = new ArrayList<>();
+    private static final int MAX_COLOR_RESULTS = 200;
+    private RecyclerView gridView;
+    private PhotoGridAdapter adapter;
+    // Photos currently shown in the grid: the album, or the latest search results
+    private List<Photo> displayedPhotos = new ArrayList<>();
+    // Whether the grid shows the album itself, so added photos belong in it
+    private boolean showingAlbum;
+    private ArrayAdapter<String> autoCompleteAdapter;
+    private PhotoSortOrder sortOrder = PhotoSortOrder.ADDED;
     private ActivityResultLauncher<Intent> selectPhotoLauncher;
+    private ActivityResultLauncher<Intent> selectFolderLauncher;
+    private ImportQueue importQueue;
+    private LinearLayout selectionBar;
+    private TextView selectionCountText;
+    private final OnBackPressedCallback selectionBackCallback = new OnBackPressedCallback(false) {
+        @Override
+        public void handleOnBackPressed() {
+            endSelection();
+        }
+    };
+    private LinearLayout importProgressRow;
+    private ProgressBar importProgressBar;
+    private TextView importProgressText;
     private Album currentAlbum;
     private User user;
+    private ThumbnailLoader thumbnailLoader;
 
     private int screenWidth;
     private int squareImageSideLength;
@@ -62,6 +101,8 @@ public class AlbumActivity extends AppCompatActivity{
 
         // Get User
         user = DataManager.loadUser(this);
+        thumbnailLoader = ThumbnailLoader.getInstance(this);
+        importQueue = ImportQueue.getInstance(this);
 
         // Image Sizes based on Screen Size
         DisplayMetrics metrics = new DisplayMetrics();
@@ -92,21 +133,11 @@ public class AlbumActivity extends AppCompatActivity{
         AutoCompleteTextView tagValueInput = findViewById(R.id.searchTagValueInput);
 
         // Setup spinner values
-        ArrayAdapter<String> tagTypeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_dropdown_item, new String[]{"Person", "Location"});
+        ArrayAdapter<String> tagTypeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_dropdown_item, TagIndex.get(user).getTypes());
         tagTypeSpinner.setAdapter(tagTypeAdapter);
 
-        // Gather unique tag values from all albums
-        Set<String> allTagValues = new HashSet<>();
-        for (Album album : user.getAlbums()) {
-            for (Photo photo : album.getPhotos()) {
-                for (Tag tag : photo.getTags()) {
-                    allTagValues.add(tag.getValue());
-                }
-            }
-        }
-
         // Setup AutoComplete suggestions
-        ArrayAdapter<String> autoCompleteAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>(allTagValues));
+        autoCompleteAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>(TagIndex.get(user).getAllValues()));
         tagValueInput.setAdapter(autoCompleteAdapter);
 
         Log.d(TAG, "onCreate: Add Photo Button created");
@@ -117,57 +148,101 @@ public class AlbumActivity extends AppCompatActivity{
             Log.e(TAG, "onCreate: GridView not found!");
             return;
         }
-        adapter = new ArrayAdapter<String>(this, 0, photoPaths) {
+        adapter = new PhotoGridAdapter(this, squareImageSideLength, padding);
+        gridView.setLayoutManager(new GridLayoutManager(this, 3));
+        gridView.setAdapter(adapter);
+
+        // Cells show quick EXIF previews while flinging and upgrade once the grid settles
+        gridView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public View getView(int position, View convertView, ViewGroup parent) {
-                ImageView imageView;
-                if (convertView == null) {
-                    imageView = new ImageView(getContext());
-                    imageView.setLayoutParams(new GridView.LayoutParams(squareImageSideLength, squareImageSideLength));
-                    imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                    imageView.setPadding(padding, padding, padding, padding);
-                } else {
-                    imageView = (ImageView) convertView;
-                }
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                thumbnailLoader.setScrolling(newState != RecyclerView.SCROLL_STATE_IDLE);
+            }
+        });
 
-                Uri uri = Uri.parse(getItem(position));
-                try (InputStream stream = getContentResolver().openInputStream(uri)) {
-                    Bitmap bitmap = BitmapFactory.decodeStream(stream);
-                    imageView.setImageBitmap(bitmap);
-                } catch (IOException | SecurityException e) {
-                    Log.e(TAG, "Failed to load image for URI: " + uri, e);
-                    imageView.setImageResource(android.R.drawable.ic_menu_report_image); // fallback image
-                }
+        // Multi-select: actions apply to every selected photo, back leaves selection mode
+        selectionBar = findViewById(R.id.selectionBar);
+        selectionCountText = findViewById(R.id.selectionCountText);
+        Button selectionActionsButton = findViewById(R.id.selectionActionsButton);
+        selectionActionsButton.setOnClickListener(v -> showSelectionOptionsDialog());
+        Button selectionDoneButton = findViewById(R.id.selectionDoneButton);
+        selectionDoneButton.setOnClickListener(v -> endSelection());
+        getOnBackPressedDispatcher().addCallback(this, selectionBackCallback);
+
+        // Progress of queued imports into this album
+        importProgressRow = findViewById(R.id.importProgressRow);
+        importProgressBar = findViewById(R.id.importProgressBar);
+        importProgressText = findViewById(R.id.importProgressText);
+        Button stopImportButton = findViewById(R.id.stopImportButton);
+        stopImportButton.setOnClickListener(v -> {
+            if (currentAlbum != null) {
+                importQueue.cancel(currentAlbum.getName());
+            }
+        });
 
-                return imageView;
+        // Sorted orders are kept by the album, so switching between them does not sort again
+        if (savedInstanceState != null) {
+            sortOrder = PhotoSortOrder.valueOf(savedInstanceState.getString("sortOrder", PhotoSortOrder.ADDED.name()));
+        }
+        Spinner sortSpinner = findViewById(R.id.sortSpinner);
+        String[] sortLabels = new String[PhotoSortOrder.values().length];
+        for (PhotoSortOrder order : PhotoSortOrder.values()) {
+            sortLabels[order.ordinal()] = "Sort: " + order.getLabel();
+        }
+        sortSpinner.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_spinner_dropdown_item, sortLabels));
+        sortSpinner.setSelection(sortOrder.ordinal());
+        sortSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                PhotoSortOrder selected = PhotoSortOrder.values()[position];
+                if (selected != sortOrder) {
+                    sortOrder = selected;
+                    showAlbumPhotos();
+                }
             }
-        };
 
-        gridView.setAdapter(adapter);
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
 
         // Get the album name from intent and load album
         String albumName = getIntent().getStringExtra("albumName");
         if (albumName != null) {
             currentAlbum = user.getAlbumByName(albumName);
+            showAlbumPhotos();
+
+            // Fill in metadata and content hashes for photos imported before they were recorded
             if (currentAlbum != null) {
-                for (Photo p : currentAlbum.getPhotos()) {
-                    photoPaths.add(p.getFilePath());
-                }
+                MetadataExtractor.extractMissing(this, user, currentAlbum, null);
             }
         }
 
-        // Set listener on each image to allow the user to open an image
-        gridView.setOnItemClickListener((parent, view, position, id) -> {
-            Intent intent = new Intent(this, PhotoViewerActivity.class);
-            intent.putExtra("albumName", currentAlbum.getName());
-            intent.putExtra("photoIndex", position);
-            startActivity(intent);
-        });
+        // Apply library changes as they happen instead of reloading everything on resume
+        LibraryChangeFeed.get().subscribe(this, this::onLibraryChanged);
+
+        adapter.setOnPhotoClickListener(new PhotoGridAdapter.OnPhotoClickListener() {
+            // Set listener on each image to allow the user to open an image
+            @Override
+            public void onPhotoClick(int position, Photo photo) {
+                if (adapter.isSelecting()) {
+                    adapter.toggleSelection(position);
+                    updateSelectionBar();
+                    return;
+                }
+                openPhoto(photo);
+            }
 
-        // Long click image
-        gridView.setOnItemLongClickListener((parent, view, position, id) -> {
-            showPhotoOptionsDialog(position);
-            return true;
+            // Long click image
+            @Override
+            public void onPhotoLongClick(int position, Photo photo) {
+                if (adapter.isSelecting()) {
+                    adapter.toggleSelection(position);
+                    updateSelectionBar();
+                    return;
+                }
+                showPhotoOptionsDialog(photo);
+            }
         });
 
         // Implement Save/Load Capability
@@ -176,57 +251,67 @@ public class AlbumActivity extends AppCompatActivity{
                 result -> {
                     if (result.getResultCode() == RESULT_OK && result.getData() != null) {
                         Intent data = result.getData();
-                        Uri uri = data.getData();
-                        if (uri != null) {
-                            // Persist access
-                            final int takeFlags = data.getFlags() & (Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
-
-                            try {
-                                getContentResolver().takePersistableUriPermission(uri, takeFlags);
-                            }
-                            catch (SecurityException e) {
-                                Log.e(TAG, "URI permission error", e);
-                            }
-
-                            String path = uri.toString();
-
-                            // Prevent duplicates
-                            if (currentAlbum.getPhotos().stream().anyMatch(p -> p.getFilePath().equals(path))) {
-                                Toast.makeText(this, "This photo already exists in the album!", Toast.LENGTH_SHORT).show();
-                                return;
-                            }
-
-                            try {
-                                Photo photo = new Photo(path);
-                                currentAlbum.addPhoto(photo);
-                                photoPaths.add(path);
-                                adapter.notifyDataSetChanged();
-
-                                // Persist user data
-                                DataManager.saveUser(user, this);
-                                Toast.makeText(this, "Photo added and saved!", Toast.LENGTH_SHORT).show();
-                            } catch (IOException e) {
-                                Log.e(TAG, "Photo creation failed for path: " + path, e);
-                                Toast.makeText(this, "Failed to add photo: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                        List<Uri> uris = new ArrayList<>();
+                        ClipData clipData = data.getClipData();
+                        if (clipData != null) {
+                            for (int i = 0; i < clipData.getItemCount(); i++) {
+                                uris.add(clipData.getItemAt(i).getUri());
                             }
+                        } else if (data.getData() != null) {
+                            uris.add(data.getData());
+                        }
+                        if (!uris.isEmpty()) {
+                            importQueue.enqueue(currentAlbum.getName(), uris, squareImageSideLength);
                         }
                     }
                 }
         );
+
+        // Import every image below a picked folder
+        selectFolderLauncher = registerForActivityResult(
+                new ActivityResultContracts.StartActivityForResult(),
+                result -> {
+                    if (result.getResultCode() == RESULT_OK && result.getData() != null && result.getData().getData() != null) {
+                        importQueue.enqueueTree(currentAlbum.getName(), result.getData().getData(), squareImageSideLength);
+                    }
+                }
+        );
     }
 
     private void showSearchDialog() {
-        final String[] modes = { "Single Tag", "Tag OR Tag", "Tag AND Tag" };
+        final String[] modes = { "Single Tag", "Fuzzy Tag", "Tag OR Tag", "Tag AND Tag", "By Date", "By Color" };
 
         AlertDialog.Builder modeBuilder = new AlertDialog.Builder(this);
         modeBuilder.setTitle("Select Search Mode");
         modeBuilder.setItems(modes, (dialog, which) -> {
             String selectedMode = modes[which];
-            promptForTags(selectedMode);
+            if (selectedMode.equals("By Color")) {
+                promptForColor();
+            } else if (selectedMode.equals("By Date")) {
+                DateRangeDialog.show(this, (start, end, label) ->
+                        searchLibrary(selectedMode, null, null, null, null, new long[]{start, end}));
+            } else {
+                promptForTags(selectedMode);
+            }
         });
         modeBuilder.show();
     }
 
+    // Search every album for photos dominated by the chosen colour
+    private void promptForColor() {
+        new AlertDialog.Builder(this)
+                .setTitle("Search by Color")
+                .setItems(ColorSignature.NAMES, (dialog, which) -> {
+                    List<Photo> matches = ColorIndex.get(user).search(which, MAX_COLOR_RESULTS);
+                    showPhotos(matches);
+                    if (matches.isEmpty()) {
+                        Toast.makeText(this, "No matches found.", Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     private void promptForTags(String mode) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Search by Tag");
@@ -237,7 +322,7 @@ public class AlbumActivity extends AppCompatActivity{
 
         // Dropdown for tag types
         Spinner tagTypeSpinner1 = new Spinner(this);
-        ArrayAdapter<String> tagTypeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, new String[]{"Location", "Person"});
+        ArrayAdapter<String> tagTypeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, TagIndex.get(user).getTypes());
         tagTypeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         tagTypeSpinner1.setAdapter(tagTypeAdapter);
         layout.addView(tagTypeSpinner1);
@@ -245,7 +330,7 @@ public class AlbumActivity extends AppCompatActivity{
         // Autocomplete for tag values
         final AutoCompleteTextView tagValueInput1 = new AutoCompleteTextView(this);
         tagValueInput1.setHint("Tag value");
-        ArrayAdapter<String> autoCompleteAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>(getAllTagValues()));
+        ArrayAdapter<String> autoCompleteAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>(TagIndex.get(user).getAllValues()));
         tagValueInput1.setAdapter(autoCompleteAdapter);
         tagValueInput1.setThreshold(1);
         layout.addView(tagValueInput1);
@@ -253,7 +338,7 @@ public class AlbumActivity extends AppCompatActivity{
         final Spinner tagTypeSpinner2;
         final AutoCompleteTextView tagValueInput2;
 
-        if (!mode.equals("Single Tag")) {
+        if (!mode.equals("Single Tag") && !mode.equals("Fuzzy Tag")) {
             tagTypeSpinner2 = new Spinner(this);
             tagTypeSpinner2.setAdapter(tagTypeAdapter);
             layout.addView(tagTypeSpinner2);
@@ -268,6 +353,17 @@ public class AlbumActivity extends AppCompatActivity{
             tagValueInput2 = null;
         }
 
+        // Optional capture date range, combined with the tags
+        final long[] dateRange = new long[2];
+        Button dateRangeButton = new Button(this);
+        dateRangeButton.setText("Taken: Any time");
+        dateRangeButton.setOnClickListener(v -> DateRangeDialog.show(this, (start, end, label) -> {
+            dateRange[0] = start;
+            dateRange[1] = end;
+            dateRangeButton.setText("Taken: " + label);
+        }));
+        layout.addView(dateRangeButton);
+
         builder.setView(layout);
 
         builder.setPositiveButton("Search", (dialog, which) -> {
@@ -277,67 +373,86 @@ public class AlbumActivity extends AppCompatActivity{
             final String tagType2 = tagTypeSpinner2 != null ? tagTypeSpinner2.getSelectedItem().toString() : null;
             final String tagValue2 = tagValueInput2 != null ? tagValueInput2.getText().toString().trim() : null;
 
-            List<String> matches = new ArrayList<>();
-
-            for (Album album : user.getAlbums()) {
-                for (Photo photo : album.getPhotos()) {
-                    boolean match1 = photo.getTags().stream().anyMatch(
-                            tag -> tag.getName().equalsIgnoreCase(tagType1) &&
-                                    tag.getValue().toLowerCase().startsWith(tagValue1.toLowerCase())
-                    );
-
-                    boolean match2 = tagType2 != null && photo.getTags().stream().anyMatch(
-                            tag -> tag.getName().equalsIgnoreCase(tagType2) &&
-                                    tag.getValue().toLowerCase().startsWith(tagValue2.toLowerCase())
-                    );
-
-                    boolean shouldInclude;
-                    switch (mode) {
-                        case "Single Tag":
-                            shouldInclude = match1;
-                            break;
-                        case "Tag OR Tag":
-                            shouldInclude = match1 || match2;
-                            break;
-                        case "Tag AND Tag":
-                            shouldInclude = match1 && match2;
-                            break;
-                        default:
-                            shouldInclude = false;
-                            break;
-                    }
+            searchLibrary(mode, tagType1, tagValue1, tagType2, tagValue2, dateRange[1] != 0 ? dateRange : null);
+        });
 
-                    if (shouldInclude && !matches.contains(photo.getFilePath())) {
-                        matches.add(photo.getFilePath());
-                    }
-                }
-            }
 
-            photoPaths.clear();
-            photoPaths.addAll(matches);
-            adapter.notifyDataSetChanged();
+        builder.setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss());
 
-            if (matches.isEmpty()) {
-                Toast.makeText(this, "No matches found.", Toast.LENGTH_SHORT).show();
-            }
+        builder.show();
+    }
 
-            Intent intent = new Intent(AlbumActivity.this, PhotoViewerActivity.class);
-            intent.putExtra("albumName", currentAlbum.getName()); // or a dummy name
-            intent.putExtra("photoIndex", 0);
-            intent.putStringArrayListExtra("photoPaths", new ArrayList<>(matches));
-            startActivity(intent);
 
-        });
+    // Searches every album with the tag mode, within the capture date range if one is given.
+    // Each tag is looked up in its type's partition of the tag index and the date range in the date index.
+    private void searchLibrary(String mode, String tagType1, String tagValue1, String tagType2, String tagValue2, long[] dateRange) {
+        List<Photo> candidates;
+        if (mode.equals("By Date")) {
+            candidates = DateIndex.get(user).between(dateRange[0], dateRange[1]);
+        } else {
+            TagIndex tagIndex = TagIndex.get(user);
+            Set<Photo> match1 = tagIndex.search(tagType1, tagValue1);
+            Set<Photo> match2 = tagType2 != null ? tagIndex.search(tagType2, tagValue2) : Collections.emptySet();
+            candidates = new ArrayList<>();
+            switch (mode) {
+                case "Single Tag":
+                    candidates.addAll(match1);
+                    break;
+                case "Fuzzy Tag":
+                    // Ranked by how close each value is to what was typed
+                    candidates.addAll(tagIndex.fuzzySearch(tagType1, tagValue1));
+                    break;
+                case "Tag OR Tag":
+                    candidates.addAll(match1);
+                    for (Photo photo : match2) {
+                        if (!match1.contains(photo)) {
+                            candidates.add(photo);
+                        }
+                    }
+                    break;
+                case "Tag AND Tag":
+                    Set<Photo> smaller = match1.size() <= match2.size() ? match1 : match2;
+                    Set<Photo> larger = smaller == match1 ? match2 : match1;
+                    for (Photo photo : smaller) {
+                        if (larger.contains(photo)) {
+                            candidates.add(photo);
+                        }
+                    }
+                    break;
+            }
+        }
 
+        List<Photo> matches = new ArrayList<>();
+        Set<String> seenPaths = new HashSet<>();
+        for (Photo photo : candidates) {
+            if (dateRange != null && !mode.equals("By Date") && !takenBetween(photo, dateRange[0], dateRange[1])) {
+                continue;
+            }
+            if (seenPaths.add(photo.getFilePath())) {
+                matches.add(photo);
+            }
+        }
 
-        builder.setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss());
+        showPhotos(matches);
 
-        builder.show();
+        if (matches.isEmpty()) {
+            Toast.makeText(this, "No matches found.", Toast.LENGTH_SHORT).show();
+        }
+
+        Intent intent = new Intent(AlbumActivity.this, PhotoViewerActivity.class);
+        intent.putExtra("albumName", currentAlbum.getName()); // or a dummy name
+        intent.putExtra("photoIndex", 0);
+        startActivity(intent);
     }
 
+    private static boolean takenBetween(Photo photo, long start, long end) {
+        PhotoMetadata metadata = photo.getMetadata();
+        long date = metadata != null ? metadata.getDateTaken() : 0;
+        return date != 0 && date >= start && date <= end;
+    }
 
     private void runTagSearch(String mode, Tag tag1, Tag tag2) {
-        photoPaths.clear();
+        List<Photo> matches = new ArrayList<>();
 
         for (Photo photo : currentAlbum.getPhotos()) {
             List<Tag> tags = photo.getTags();
@@ -360,26 +475,13 @@ public class AlbumActivity extends AppCompatActivity{
             }
 
             if (shouldInclude) {
-                photoPaths.add(photo.getFilePath());
+                matches.add(photo);
             }
         }
 
-        adapter.notifyDataSetChanged();
-    }
-
-    private Set<String> getAllTagValues() {
-        Set<String> tagValues = new HashSet<>();
-        for (Album album : user.getAlbums()) {
-            for (Photo photo : album.getPhotos()) {
-                for (Tag tag : photo.getTags()) {
-                    tagValues.add(tag.getValue());
-                }
-            }
-        }
-        return tagValues;
+        showPhotos(matches);
     }
 
-
     private boolean containsTag(List<Tag> tags, Tag target) {
         for (Tag tag : tags) {
             if (tag.equals(target)) {
@@ -390,61 +492,188 @@ public class AlbumActivity extends AppCompatActivity{
     }
 
     private void addPhoto() {
-        Log.d(TAG, "addPhoto: Prompting user to select a photo");
-        // Create an intent to open the SAF file picker
-        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
-        intent.setType("image/*");
-        intent.addCategory(Intent.CATEGORY_OPENABLE);
-        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, false);
-        intent.addFlags(Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
-        selectPhotoLauncher.launch(intent);
+        String[] options = {"Select Photos", "Import Folder"};
+        new AlertDialog.Builder(this)
+                .setTitle("Add Photos")
+                .setItems(options, (dialog, which) -> {
+                    if (which == 0) {
+                        Log.d(TAG, "addPhoto: Prompting user to select photos");
+                        // Create an intent to open the SAF file picker
+                        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                        intent.setType("image/*");
+                        intent.addCategory(Intent.CATEGORY_OPENABLE);
+                        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+                        intent.addFlags(Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                        selectPhotoLauncher.launch(intent);
+                    } else {
+                        Log.d(TAG, "addPhoto: Prompting user to select a folder");
+                        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+                        intent.addFlags(Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                        selectFolderLauncher.launch(intent);
+                    }
+                })
+                .show();
     }
 
+    // Shows the queue's progress for this album below the title
+    private final ImportQueue.Listener importListener = new ImportQueue.Listener() {
+        @Override
+        public void onProgress(ImportQueue.Progress progress) {
+            importProgressRow.setVisibility(View.VISIBLE);
+            importProgressBar.setMax(progress.total);
+            importProgressBar.setProgress(progress.processed);
+            importProgressText.setText("Importing " + progress.processed + " of " + progress.total + " photos");
+        }
+
+        @Override
+        public void onFinished(ImportQueue.Progress progress) {
+            importProgressRow.setVisibility(View.GONE);
+            if (progress.total == 1 && progress.imported == 1) {
+                Toast.makeText(AlbumActivity.this, "Photo added and saved!", Toast.LENGTH_SHORT).show();
+            } else if (progress.total == 1 && progress.duplicates == 1) {
+                Toast.makeText(AlbumActivity.this, "This photo already exists in the album!", Toast.LENGTH_SHORT).show();
+            } else if (progress.total == 1) {
+                Toast.makeText(AlbumActivity.this, "Failed to add photo", Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(AlbumActivity.this, "Imported " + progress.imported + " of " + progress.total + " photos ("
+                        + progress.duplicates + " duplicates, " + progress.failed + " failed)", Toast.LENGTH_LONG).show();
+            }
+        }
+    };
+
 
     // Function to provide user options on long hold of what to do to a photo
-    private void showPhotoOptionsDialog(int index) {
-        String[] options = { "Add a Tag", "Move", "Copy", "Delete" };
+    private void showPhotoOptionsDialog(Photo photo) {
+        String[] options = { "Add a Tag", "Move", "Copy", "Delete", "Similar Photos", "Select Multiple" };
 
         new AlertDialog.Builder(this)
-                .setTitle(photoPaths.get(index))
+                .setTitle(photo.getFilePath())
                 .setItems(options, (dialog, which) -> {
-                    Photo selectedPhoto = null;
-                    for (Photo photo : currentAlbum.getPhotos()) {
-                        if (photo.getFilePath().equals(photoPaths.get(index))) {
-                            selectedPhoto = photo;
-                            break;
+                    if (which == 4) {
+                        showSimilarPhotos(photo);
+                        return;
+                    }
+
+                    if (which == 5) {
+                        int position = displayedPhotos.indexOf(photo);
+                        if (position >= 0) {
+                            adapter.startSelection(position);
+                            updateSelectionBar();
                         }
+                        return;
                     }
 
-                    if (selectedPhoto == null) return;
+                    // Search results may come from other albums
+                    if (!currentAlbum.getPhotos().contains(photo)) return;
+                    applyToPhotos(which, Collections.singletonList(photo));
+                })
+                .show();
+    }
+
+    // Offers the photo actions for every selected photo of this album
+    private void showSelectionOptionsDialog() {
+        List<Photo> selected = selectedPhotosInAlbum();
+        if (selected.isEmpty()) {
+            Toast.makeText(this, "No photos of this album are selected", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String[] options = { "Add a Tag", "Move", "Copy", "Delete" };
+
+        new AlertDialog.Builder(this)
+                .setTitle(selected.size() + " photo(s) selected")
+                .setItems(options, (dialog, which) -> applyToPhotos(which, selected))
+                .show();
+    }
 
-                    switch (which) {
-                        case 0: // Add a Tag
-                            AddTagToPhoto(selectedPhoto);
-                            break;
+    // Runs option "which" of the photo menus on the given photos of the current album
+    private void applyToPhotos(int which, List<Photo> photos) {
+        switch (which) {
+            case 0: // Add a Tag
+                AddTagToPhotos(photos);
+                break;
 
-                        case 1: // Move
-                            movePhotoToAlbum(selectedPhoto);
-                            break;
+            case 1: // Move
+                movePhotosToAlbum(photos);
+                break;
 
-                        case 2: // Copy
-                            copyPhotoToAlbum(selectedPhoto);
-                            break;
+            case 2: // Copy
+                copyPhotosToAlbum(photos);
+                break;
 
-                        case 3: // Delete
-                            currentAlbum.removePhoto(selectedPhoto);
-                            photoPaths.remove(index);
-                            adapter.notifyDataSetChanged();
-                            DataManager.saveUser(user, this);
-                            Toast.makeText(this, "Photo deleted", Toast.LENGTH_SHORT).show();
-                            break;
-                    }
-                })
-                .show();
+            case 3: // Delete
+                if (photos.size() == 1) {
+                    deletePhotos(photos);
+                    break;
+                }
+                new AlertDialog.Builder(this)
+                        .setTitle("Delete Photos")
+                        .setMessage("Are you sure you want to delete " + photos.size() + " photos?")
+                        .setPositiveButton("Delete", (dialog, button) -> deletePhotos(photos))
+                        .setNegativeButton("Cancel", null)
+                        .show();
+                break;
+        }
+    }
+
+    // Selected photos that belong to the current album; search results may include other albums
+    private List<Photo> selectedPhotosInAlbum() {
+        Set<Photo> inAlbum = Collections.newSetFromMap(new IdentityHashMap<>());
+        inAlbum.addAll(currentAlbum.getPhotos());
+        List<Photo> selected = new ArrayList<>();
+        for (Photo photo : adapter.getSelectedPhotos()) {
+            if (inAlbum.contains(photo)) {
+                selected.add(photo);
+            }
+        }
+        return selected;
+    }
+
+    // Shows the selection bar while photos are being selected
+    private void updateSelectionBar() {
+        boolean selecting = adapter.isSelecting();
+        selectionBar.setVisibility(selecting ? View.VISIBLE : View.GONE);
+        selectionCountText.setText(adapter.getSelectedCount() + " selected");
+        selectionBackCallback.setEnabled(selecting);
+    }
+
+    private void endSelection() {
+        adapter.clearSelection();
+        updateSelectionBar();
     }
 
-    // Function to tag a photo of specific tag types
-    public void AddTagToPhoto(Photo photo) {
+    // Removes the photos from the album and the grid, then saves once
+    private void deletePhotos(List<Photo> photos) {
+        currentAlbum.removePhotos(photos);
+        for (Photo photo : photos) {
+            LibraryIndexes.photoRemoved(user, photo);
+        }
+        endSelection();
+        DataManager.saveUser(user, this);
+        Toast.makeText(this, photos.size() == 1 ? "Photo deleted" : photos.size() + " photos deleted", Toast.LENGTH_SHORT).show();
+    }
+
+    // Shows the photo followed by its near-duplicates from every album, found through the perceptual hash index
+    private void showSimilarPhotos(Photo photo) {
+        if (photo.getPerceptualHash() == null) {
+            Toast.makeText(this, "This photo is still being analyzed, try again shortly.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        List<Photo> similar = SimilarityIndex.get(user).findSimilar(photo, SimilarityIndex.DEFAULT_MAX_DISTANCE);
+        if (similar.isEmpty()) {
+            Toast.makeText(this, "No similar photos found.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        List<Photo> results = new ArrayList<>();
+        results.add(photo);
+        results.addAll(similar);
+        showPhotos(results);
+        Toast.makeText(this, similar.size() + " similar photo(s) found.", Toast.LENGTH_SHORT).show();
+    }
+
+    // Function to tag photos with a tag of a specific type
+    public void AddTagToPhotos(List<Photo> photos) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Add Tag");
 
@@ -452,12 +681,8 @@ public class AlbumActivity extends AppCompatActivity{
         layout.setOrientation(LinearLayout.VERTICAL);
         layout.setPadding(50, 40, 50, 10);
 
-        // Dropdown for tag type
-        final Spinner tagTypeSpinner = new Spinner(this);
-        ArrayAdapter<String> spinnerAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, new String[]{"Person", "Location"});
-        spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        tagTypeSpinner.setAdapter(spinnerAdapter);
-        layout.addView(tagTypeSpinner);
+        // Dropdown for tag type, with an entry for naming a new one
+        final TagTypeField tagTypeField = new TagTypeField(this, user, layout);
 
         // Input for tag value
         final EditText tagValueInput = new EditText(this);
@@ -467,19 +692,30 @@ public class AlbumActivity extends AppCompatActivity{
         builder.setView(layout);
 
         builder.setPositiveButton("Add", (dialog, which) -> {
-            String tagName = tagTypeSpinner.getSelectedItem().toString();
+            String tagName = tagTypeField.getType();
             String tagValue = tagValueInput.getText().toString().trim();
 
-            if (!tagValue.isEmpty()) {
+            if (tagName.isEmpty()) {
+                Toast.makeText(this, "Tag type is required", Toast.LENGTH_LONG).show();
+            } else if (!tagValue.isEmpty()) {
                 Tag myTag = new Tag(tagName, tagValue);
-                boolean tagExists = photo.getTags().stream().anyMatch(t -> t.equals(myTag));
+                int tagged = 0;
+                for (Photo photo : photos) {
+                    boolean tagExists = photo.getTags().stream().anyMatch(t -> t.equals(myTag));
+                    if (!tagExists) {
+                        photo.addTag(myTag);
+                        LibraryIndexes.tagAdded(user, photo, myTag);
+                        tagged++;
+                    }
+                }
 
-                if (tagExists) {
+                if (tagged == 0) {
                     Toast.makeText(this, "Tag already exists: " + myTag, Toast.LENGTH_SHORT).show();
                 } else {
-                    photo.addTag(myTag);
-                    Toast.makeText(this, "Tag added: " + myTag, Toast.LENGTH_SHORT).show();
+                    endSelection();
                     DataManager.saveUser(user, this);
+                    Toast.makeText(this, photos.size() == 1 ? "Tag added: " + myTag : "Tag added to " + tagged + " photos: " + myTag,
+                            Toast.LENGTH_SHORT).show();
                 }
             } else {
                 Toast.makeText(this, "Tag value is required", Toast.LENGTH_LONG).show();
@@ -490,8 +726,8 @@ public class AlbumActivity extends AppCompatActivity{
         builder.show();
     }
 
-    // Function to move a photo from one album to another
-    private void movePhotoToAlbum(Photo photo) {
+    // Function to move photos from one album to another
+    private void movePhotosToAlbum(List<Photo> photos) {
         List<String> albumNames = new ArrayList<>();
         for (Album album : user.getAlbums()) {
             if (!album.getName().equals(currentAlbum.getName())) {
@@ -509,13 +745,17 @@ public class AlbumActivity extends AppCompatActivity{
                     if (targetAlbum == null) return;
 
                     try {
-                        Photo movedPhoto = new Photo(photo.getFilePath());
-                        targetAlbum.addPhoto(movedPhoto);
-                        currentAlbum.removePhoto(photo);
-                        photoPaths.remove(photo.getFilePath());
-                        adapter.notifyDataSetChanged();
+                        List<Photo> movedPhotos = duplicateAll(photos);
+                        targetAlbum.addPhotos(movedPhotos);
+                        currentAlbum.removePhotos(photos);
+                        for (int i = 0; i < photos.size(); i++) {
+                            LibraryIndexes.photoRemoved(user, photos.get(i));
+                            LibraryIndexes.photoAdded(user, movedPhotos.get(i));
+                        }
+                        endSelection();
                         DataManager.saveUser(user, this);
-                        Toast.makeText(this, "Photo moved successfully", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(this, photos.size() == 1 ? "Photo moved successfully" : photos.size() + " photos moved successfully",
+                                Toast.LENGTH_SHORT).show();
                     } catch (IOException e) {
                         Toast.makeText(this, "Failed to move photo", Toast.LENGTH_SHORT).show();
                     }
@@ -524,8 +764,8 @@ public class AlbumActivity extends AppCompatActivity{
                 .show();
     }
 
-    // Function to copy a photo from one album to another
-    private void copyPhotoToAlbum(Photo photo) {
+    // Function to copy photos from one album to another
+    private void copyPhotosToAlbum(List<Photo> photos) {
         List<String> albumNames = new ArrayList<>();
         for (Album album : user.getAlbums()) {
             if (!album.getName().equals(currentAlbum.getName())) {
@@ -543,10 +783,15 @@ public class AlbumActivity extends AppCompatActivity{
                     if (targetAlbum == null) return;
 
                     try {
-                        Photo copiedPhoto = new Photo(photo.getFilePath());
-                        targetAlbum.addPhoto(copiedPhoto);
+                        List<Photo> copiedPhotos = duplicateAll(photos);
+                        targetAlbum.addPhotos(copiedPhotos);
+                        for (Photo copiedPhoto : copiedPhotos) {
+                            LibraryIndexes.photoAdded(user, copiedPhoto);
+                        }
+                        endSelection();
                         DataManager.saveUser(user, this);
-                        Toast.makeText(this, "Photo copied successfully", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(this, photos.size() == 1 ? "Photo copied successfully" : photos.size() + " photos copied successfully",
+                                Toast.LENGTH_SHORT).show();
                     } catch (IOException e) {
                         Toast.makeText(this, "Failed to copy photo", Toast.LENGTH_SHORT).show();
                     }
@@ -556,21 +801,147 @@ public class AlbumActivity extends AppCompatActivity{
     }
 
 
+    // Copies every photo before anything is changed, so a failure leaves both albums untouched
+    private List<Photo> duplicateAll(List<Photo> photos) throws IOException {
+        List<Photo> copies = new ArrayList<>(photos.size());
+        for (Photo photo : photos) {
+            copies.add(photo.duplicate());
+        }
+        return copies;
+    }
+
+    // Applies one library change to the grid; changes made while this screen was
+    // stopped arrive in order when it starts again
+    private void onLibraryChanged(LibraryChange change) {
+        switch (change.getType()) {
+            case PHOTOS_ADDED:
+                // The album keeps its sorted orders up to date, so the grid only diffs the new list
+                if (showingAlbum && change.getAlbum() == currentAlbum) {
+                    showAlbumPhotos();
+                }
+                break;
+            case PHOTOS_REMOVED:
+                if (showingAlbum) {
+                    if (change.getAlbum() == currentAlbum) {
+                        showAlbumPhotos();
+                    }
+                    break;
+                }
+                // Search results can hold photos of any album
+                Set<Photo> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+                removed.addAll(change.getPhotos());
+                List<Photo> remaining = new ArrayList<>(displayedPhotos);
+                if (remaining.removeIf(removed::contains)) {
+                    submitPhotos(remaining);
+                }
+                break;
+            case ALBUM_RENAMED:
+                if (change.getAlbum() == currentAlbum) {
+                    getIntent().putExtra("albumName", currentAlbum.getName());
+                }
+                break;
+            case ALBUM_REMOVED:
+                if (change.getAlbum() == currentAlbum) {
+                    finish();
+                }
+                break;
+            case TAG_ADDED:
+                String value = change.getTag().getValue();
+                if (autoCompleteAdapter.getPosition(value) < 0) {
+                    autoCompleteAdapter.add(value);
+                }
+                showRetaggedPhoto(change);
+                break;
+            case TAG_REMOVED:
+                showRetaggedPhoto(change);
+                break;
+            case REACHABILITY_CHANGED:
+                // Missing photos switch to the placeholder, found ones back to their thumbnail
+                adapter.refreshPhotos(change.getPhotos());
+                break;
+            case RESYNC:
+                user = DataManager.loadUser(this);
+                currentAlbum = user.getAlbumByName(getIntent().getStringExtra("albumName"));
+                if (currentAlbum == null) {
+                    finish();
+                } else {
+                    showAlbumPhotos();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
     @Override
-    protected void onResume() {
-        super.onResume();
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString("sortOrder", sortOrder.name());
+    }
 
-        user = DataManager.loadUser(this);
-        String albumName = getIntent().getStringExtra("albumName");
-        currentAlbum = user.getAlbumByName(albumName);
+    // Sorted by tag count, a retagged photo may have moved
+    private void showRetaggedPhoto(LibraryChange change) {
+        if (showingAlbum && change.getAlbum() == currentAlbum && sortOrder == PhotoSortOrder.TAG_COUNT) {
+            showAlbumPhotos();
+        }
+    }
 
-        photoPaths.clear();
-        if (currentAlbum != null) {
-            for (Photo p : currentAlbum.getPhotos()) {
-                photoPaths.add(p.getFilePath());
+    // Shows every photo of the current album in the grid, in the chosen order
+    private void showAlbumPhotos() {
+        showingAlbum = true;
+        submitPhotos(currentAlbum != null ? currentAlbum.getPhotos(sortOrder) : new ArrayList<>());
+    }
+
+    // Shows search results or other photos that are not simply the album
+    private void showPhotos(List<Photo> photos) {
+        showingAlbum = false;
+        submitPhotos(photos);
+    }
+
+    // Hands the grid a new list; the adapter diffs it and rebinds only changed cells.
+    // The list is shared, not copied: album lists and search results are never edited once built,
+    // so opening a large album costs no copy and the grid only binds the cells on screen
+    private void submitPhotos(List<Photo> photos) {
+        displayedPhotos = photos;
+        adapter.submitList(photos);
+    }
+
+    // Opens the photo in the viewer, in whichever album holds it; the viewer pages in the grid's order
+    private void openPhoto(Photo photo) {
+        Album album = currentAlbum;
+        PhotoSortOrder order = showingAlbum ? sortOrder : PhotoSortOrder.ADDED;
+        int index = album.getPhotos(order).indexOf(photo);
+        if (index < 0) {
+            order = PhotoSortOrder.ADDED;
+            for (Album other : user.getAlbums()) {
+                index = other.getPhotos().indexOf(photo);
+                if (index >= 0) {
+                    album = other;
+                    break;
+                }
             }
         }
+        if (index < 0) return;
 
-        adapter.notifyDataSetChanged();
+        Intent intent = new Intent(this, PhotoViewerActivity.class);
+        intent.putExtra("albumName", album.getName());
+        intent.putExtra("photoIndex", index);
+        intent.putExtra("sortOrder", order.name());
+        startActivity(intent);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Imports keep running while the screen is away; pick up their progress again
+        if (currentAlbum != null) {
+            importQueue.addListener(currentAlbum.getName(), importListener);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        importQueue.removeListener(importListener);
     }
 }
@@ -1,32 +1,69 @@
 package photos05.android.activities;
 
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.InputType;
+import android.text.format.Formatter;
 import android.view.View;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
+import android.widget.Button;
+import android.widget.EditText;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import photos05.android.R;
 import photos05.android.model.Album;
+import photos05.android.model.AlbumSummary;
+import photos05.android.model.LibraryChange;
+import photos05.android.model.Photo;
+import photos05.android.util.AlbumListAdapter;
+import photos05.android.util.AlbumSummaryStore;
+import photos05.android.util.AppExecutors;
+import photos05.android.util.BitmapPool;
 import photos05.android.util.DataManager;
 import photos05.android.model.User;
 import photos05.android.util.AlbumDialogHelper;
+import photos05.android.util.ImportQueue;
+import photos05.android.util.LibraryChangeFeed;
+import photos05.android.util.LibraryArchive;
+import photos05.android.util.LibraryIndexes;
+import photos05.android.util.MemoryGovernor;
+import photos05.android.util.ReachabilitySweeper;
+import photos05.android.util.ThumbnailLoader;
+import photos05.android.util.ThumbnailQuality;
+import photos05.android.util.UserProfiles;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class HomeActivity extends AppCompatActivity{
-    private ListView albumListView;
-    private ArrayList<Album> albums = new ArrayList<>();
-
-    private ArrayAdapter<String> adapter;
+    private RecyclerView albumListView;
+    private AlbumListAdapter adapter;
 
     private User user;
+    private Button switchProfileButton;
+    private Button missingPhotosButton;
+    private ActivityResultLauncher<String> exportLauncher;
+    private ActivityResultLauncher<String[]> restoreLauncher;
+    // Whether a refresh of the album list is already posted
+    private boolean refreshPosted;
+    // Whether a recount of the missing photos is already posted
+    private boolean missingCountPosted;
+    // Only the latest summary load is shown, however the loads finish
+    private int displayRequest;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,20 +71,59 @@ public class HomeActivity extends AppCompatActivity{
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_home);
 
-        // Get Most Recent Album
+        // Albums are listed from their summaries; the full library loads in the background
         albumListView = findViewById(R.id.albumListView);
-        loadUserData();
+        adapter = new AlbumListAdapter(this);
+        albumListView.setLayoutManager(new LinearLayoutManager(this));
+        albumListView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        albumListView.setAdapter(adapter);
         displayAlbums();
+        Context appContext = getApplicationContext();
+        AppExecutors.io().execute(() -> DataManager.loadUser(appContext));
+
+        // Resume imports that were still queued when the app was last closed
+        ImportQueue.getInstance(this);
 
-        albumListView.setOnItemClickListener((parent, view, position, id) -> openAlbum(position));
+        // Changes made here or inside an album refresh the list once they settle
+        LibraryChangeFeed.get().subscribe(this, this::onLibraryChanged);
+
+        adapter.setOnAlbumClickListener(new AlbumListAdapter.OnAlbumClickListener() {
+            @Override
+            public void onAlbumClick(AlbumSummary album) {
+                openAlbum(album);
+            }
 
-        albumListView.setOnItemLongClickListener((parent, view, position, id) -> {
-            showAlbumOptionsDialog(position);
-            return true;
+            @Override
+            public void onAlbumLongClick(AlbumSummary album) {
+                showAlbumOptionsDialog(album);
+            }
         });
 
         findViewById(R.id.addAlbumButton).setOnClickListener(v -> createNewAlbum());
 
+        // Each profile has its own albums; only the active one is loaded
+        switchProfileButton = findViewById(R.id.switchProfileButton);
+        switchProfileButton.setOnClickListener(v -> showProfilesDialog());
+        showActiveProfile();
+
+        // Shown once the background sweep finds photos whose images are gone
+        missingPhotosButton = findViewById(R.id.missingPhotosButton);
+        missingPhotosButton.setOnClickListener(v -> showMissingPhotosDialog());
+
+        // Backups are single zip files holding the albums and the images themselves
+        exportLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/zip"), uri -> {
+            if (uri != null) {
+                Toast.makeText(this, "Exporting library...", Toast.LENGTH_SHORT).show();
+                LibraryArchive.export(this, uri, archiveListener("Exported"));
+            }
+        });
+        restoreLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                Toast.makeText(this, "Restoring library...", Toast.LENGTH_SHORT).show();
+                LibraryArchive.restore(this, uri, archiveListener("Restored"));
+            }
+        });
+
         // Inform user about long press usage
         new AlertDialog.Builder(this)
                 .setTitle("Welcome to Photo Album")
@@ -57,106 +133,312 @@ public class HomeActivity extends AppCompatActivity{
                 .show();
     }
 
-    // Load user data from DataManager
-    private void loadUserData()  {
-        user = DataManager.loadUser(this);
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Catches images deleted or permissions revoked while the app was away
+        ReachabilitySweeper.sweep(this);
+    }
 
-        // Test for Null User, initialize new user if null
+    // Load user data from DataManager the first time an action needs it
+    private User getUser() {
         if (user == null) {
-            user = new User("default");
+            user = DataManager.loadUser(this);
         }
-
-        albums = new ArrayList<>(user.getAlbums());
+        return user;
     }
 
     // Save User Data to storage
     private void saveUserData() {
-        DataManager.saveUser(user, this);
+        DataManager.saveUser(getUser(), this);
     }
 
-    // Displays the albums in the ListView
-    private void displayAlbums() {
-        ArrayList<String> albumNames = new ArrayList<>();
+    // A burst of changes, such as a replay after returning from an album, refreshes the list once.
+    // The refresh is posted so it runs after the change has been saved and its summary updated
+    private void onLibraryChanged(LibraryChange change) {
+        if (change.getType() == LibraryChange.Type.RESYNC) {
+            // Another profile may have become active
+            user = null;
+            missingPhotosButton.setVisibility(View.GONE);
+        }
+        if (change.getType() == LibraryChange.Type.REACHABILITY_CHANGED
+                || (change.getType() == LibraryChange.Type.PHOTOS_REMOVED && missingPhotosButton.getVisibility() == View.VISIBLE)) {
+            postMissingCount();
+        }
+        if (change.getType() == LibraryChange.Type.TAG_ADDED || change.getType() == LibraryChange.Type.TAG_REMOVED
+                || change.getType() == LibraryChange.Type.REACHABILITY_CHANGED || refreshPosted) {
+            return;
+        }
+        refreshPosted = true;
+        AppExecutors.runOnMain(() -> {
+            refreshPosted = false;
+            displayAlbums();
+        });
+    }
 
-        // Add each album to the list of names
-        for (Album album : albums) {
-            albumNames.add(album.getName());
+    // A sweep reports missing photos a batch at a time; the count is taken once per burst
+    private void postMissingCount() {
+        if (missingCountPosted) {
+            return;
         }
+        missingCountPosted = true;
+        AppExecutors.runOnMain(() -> {
+            missingCountPosted = false;
+            int count = 0;
+            for (List<Photo> photos : ReachabilitySweeper.findMissing(getUser()).values()) {
+                count += photos.size();
+            }
+            missingPhotosButton.setText(count == 1 ? "1 missing photo" : count + " missing photos");
+            missingPhotosButton.setVisibility(count > 0 ? View.VISIBLE : View.GONE);
+        });
+    }
 
-        // Load and Set the Adapter to display albums
-        adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, albumNames);
-        albumListView.setAdapter(adapter);
+    // Lists the photos whose images were deleted or can no longer be read, and offers to remove them
+    private void showMissingPhotosDialog() {
+        Map<Album, List<Photo>> missing = ReachabilitySweeper.findMissing(getUser());
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<Album, List<Photo>> entry : missing.entrySet()) {
+            for (Photo photo : entry.getValue()) {
+                String fileName = Uri.parse(photo.getFilePath()).getLastPathSegment();
+                entries.add(entry.getKey().getName() + ": " + (fileName != null ? fileName : "Unknown"));
+            }
+        }
+        if (entries.isEmpty()) {
+            Toast.makeText(this, "No missing photos", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Missing Photos")
+                .setItems(entries.toArray(new String[0]), null)
+                .setPositiveButton("Remove All", (dialog, which) -> {
+                    for (Map.Entry<Album, List<Photo>> entry : missing.entrySet()) {
+                        entry.getKey().removePhotos(entry.getValue());
+                        for (Photo photo : entry.getValue()) {
+                            LibraryIndexes.photoRemoved(getUser(), photo);
+                        }
+                    }
+                    saveUserData();
+                    Toast.makeText(this, entries.size() == 1 ? "1 photo removed" : entries.size() + " photos removed",
+                            Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    // Displays the album summaries; only rows whose summary changed are rebound
+    private void displayAlbums() {
+        // The summaries file, or on first run the whole library, is read on the io executor
+        int request = ++displayRequest;
+        Context appContext = getApplicationContext();
+        AppExecutors.io().execute(() -> {
+            List<AlbumSummary> stored = AlbumSummaryStore.load(appContext);
+            User loaded = stored == null ? DataManager.loadUser(appContext) : null;
+            AppExecutors.runOnMain(() -> {
+                if (request != displayRequest || isDestroyed()) {
+                    return;
+                }
+                List<AlbumSummary> summaries = stored;
+                if (summaries == null) {
+                    // The snapshot is taken here, on the thread that edits the library
+                    summaries = AlbumSummaryStore.build(loaded.snapshot(), UserProfiles.activeDirectory(appContext));
+                }
+                adapter.submitList(summaries);
+            });
+        });
     }
 
     // Creates a new album
     private void createNewAlbum() {
         AlbumDialogHelper.promptForAlbumName(this, "Create New Album", name -> {
-            if (user.getAlbumByName(name) != null) {
+            if (getUser().getAlbumByName(name) != null) {
                 Toast.makeText(this, "Album already exists", Toast.LENGTH_SHORT).show();
                 return;
             }
             Album newAlbum = new Album(name);
-            user.addAlbum(newAlbum);
+            getUser().addAlbum(newAlbum);
             saveUserData();
-            albums.add(newAlbum);
-            displayAlbums();
         });
     }
 
     // Opens an album by user selection
-    private void openAlbum(int index) {
-        Album selectedAlbum = albums.get(index);
+    private void openAlbum(AlbumSummary album) {
         Intent intent = new Intent(this, AlbumActivity.class);
-        intent.putExtra("albumName", selectedAlbum.getName());
+        intent.putExtra("albumName", album.getName());
         startActivity(intent);
     }
 
     // Provide the user with options for the album
-    private void showAlbumOptionsDialog(int index) {
+    private void showAlbumOptionsDialog(AlbumSummary summary) {
         String[] options = { "Rename", "Delete" };
 
         // Create a dialog to show the options
         new AlertDialog.Builder(this)
-                .setTitle(albums.get(index).getName())
+                .setTitle(summary.getName())
                 .setItems(options, (dialog, which) -> {
+                    Album album = getUser().getAlbumByName(summary.getName());
+                    if (album == null) return;
                     switch (which) {
-                        case 0: renameAlbum(index); break;
-                        case 1: deleteAlbum(index); break;
+                        case 0: renameAlbum(album); break;
+                        case 1: deleteAlbum(album); break;
                     }
                 })
                 .show();
     }
 
     // Rename the selected album
-    private void renameAlbum(int index) {
-        Album album = albums.get(index);
+    private void renameAlbum(Album album) {
         AlbumDialogHelper.promptForAlbumName(this, "Rename Album", new AlbumDialogHelper.OnNameEnteredListener() {
             @Override
             public void onNameEntered(String newName) {
-                if (user.getAlbumByName(newName) != null) {
+                if (getUser().getAlbumByName(newName) != null) {
                     Toast.makeText(HomeActivity.this, "Album name already exists", Toast.LENGTH_SHORT).show();
                     return;
                 }
+                String oldName = album.getName();
                 album.setName(newName);
                 saveUserData();
-                displayAlbums();
+                ImportQueue.getInstance(HomeActivity.this).albumRenamed(oldName, newName);
             }
         });
     }
 
     // Delete the selected album
-    private void deleteAlbum(int index) {
-        Album album = albums.get(index);
+    private void deleteAlbum(Album album) {
         new AlertDialog.Builder(this)
                 .setTitle("Delete Album")
                 .setMessage("Are you sure you want to delete " + album.getName() + "?")
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    user.removeAlbum(album);
-                    albums.remove(album);
+                    getUser().removeAlbum(album);
+                    for (Photo photo : album.getPhotos()) {
+                        LibraryIndexes.photoRemoved(getUser(), photo);
+                    }
                     saveUserData();
-                    displayAlbums();
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
+
+    private void showActiveProfile() {
+        switchProfileButton.setText("Profile: " + UserProfiles.getActive(this));
+    }
+
+    // Lists the profiles on this device; picking one makes it active
+    private void showProfilesDialog() {
+        List<String> profiles = UserProfiles.list(this);
+        String active = UserProfiles.getActive(this);
+        new AlertDialog.Builder(this)
+                .setTitle("Switch Profile")
+                .setSingleChoiceItems(profiles.toArray(new String[0]), profiles.indexOf(active), (dialog, which) -> {
+                    dialog.dismiss();
+                    switchProfile(profiles.get(which));
+                })
+                .setPositiveButton("New Profile", (dialog, which) -> createNewProfile())
+                .setNeutralButton("Settings", (dialog, which) -> showSettingsDialog())
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void createNewProfile() {
+        EditText input = new EditText(this);
+        input.setHint("Profile name");
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+        new AlertDialog.Builder(this)
+                .setTitle("New Profile")
+                .setView(input)
+                .setPositiveButton("OK", (dialog, which) -> {
+                    String name = input.getText().toString().trim();
+                    if (name.isEmpty()) return;
+                    if (UserProfiles.find(this, name) != null) {
+                        Toast.makeText(this, "Profile already exists", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    UserProfiles.create(this, name);
+                    switchProfile(name);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    // Unloads the current profile; the change feed then refreshes the album list from the new one
+    private void switchProfile(String profile) {
+        if (profile.equals(UserProfiles.getActive(this))) {
+            return;
+        }
+        DataManager.switchUser(this, profile);
+        showActiveProfile();
+        // Resume imports that were queued for the new profile
+        ImportQueue.getInstance(this);
+        ReachabilitySweeper.sweep(this);
+    }
+
+    // Exports the active profile to an archive, restores an archive into it, or changes the thumbnail quality
+    private void showSettingsDialog() {
+        String[] options = { "Export Library", "Restore from Archive", "Thumbnail Quality", "Memory Usage" };
+        new AlertDialog.Builder(this)
+                .setTitle("Settings")
+                .setItems(options, (dialog, which) -> {
+                    if (which == 0) {
+                        exportLauncher.launch(UserProfiles.getActive(this) + ".zip");
+                    } else if (which == 1) {
+                        restoreLauncher.launch(new String[]{"application/zip", "application/octet-stream"});
+                    } else if (which == 2) {
+                        showThumbnailQualityDialog();
+                    } else {
+                        showMemoryUsageDialog();
+                    }
+                })
+                .show();
+    }
+
+    // Reports what each cache holds and how often thumbnail decodes reuse a pooled bitmap
+    private void showMemoryUsageDialog() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> footprint : MemoryGovernor.get().getFootprints().entrySet()) {
+            report.append(footprint.getKey()).append(": ")
+                    .append(Formatter.formatShortFileSize(this, footprint.getValue())).append('\n');
+        }
+        BitmapPool pool = ThumbnailLoader.getInstance(this).getBitmapPool();
+        report.append(String.format(Locale.getDefault(), "\nBitmap pool hit rate: %.1f%% (%d hits, %d misses)",
+                pool.getHitRate() * 100, pool.getHitCount(), pool.getMissCount()));
+        new AlertDialog.Builder(this)
+                .setTitle("Memory Usage")
+                .setMessage(report)
+                .setPositiveButton("OK", null)
+                .show();
+    }
+
+    // Lets the user trade thumbnail colour depth for memory; the choice is saved for later launches
+    private void showThumbnailQualityDialog() {
+        String[] labels = { "High", "Low Memory", "Hardware" };
+        ThumbnailQuality[] qualities = { ThumbnailQuality.HIGH, ThumbnailQuality.LOW_MEMORY, ThumbnailQuality.HARDWARE };
+        ThumbnailLoader thumbnailLoader = ThumbnailLoader.getInstance(this);
+        int checked = Arrays.asList(qualities).indexOf(thumbnailLoader.getQuality());
+        new AlertDialog.Builder(this)
+                .setTitle("Thumbnail Quality")
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    dialog.dismiss();
+                    thumbnailLoader.setQuality(this, qualities[which]);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    // Shows archive progress in place of the profile name until it finishes
+    private LibraryArchive.Listener archiveListener(String verb) {
+        return new LibraryArchive.Listener() {
+            @Override
+            public void onProgress(int processed, int total) {
+                switchProfileButton.setText(verb + " " + processed + " of " + total + " photos...");
+            }
+
+            @Override
+            public void onFinished(LibraryArchive.Result result) {
+                showActiveProfile();
+                String message = result.error != null
+                        ? "Backup failed: " + result.error.getMessage()
+                        : verb + " " + result.photos + " photos" + (result.skipped > 0 ? ", skipped " + result.skipped : "");
+                Toast.makeText(HomeActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+        };
+    }
 }
@@ -1,17 +1,16 @@
 package photos05.android.activities;
 
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.net.Uri;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
-import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -25,22 +24,31 @@ import java.util.List;
 import photos05.android.R;
 import photos05.android.model.Album;
 import photos05.android.model.Photo;
+import photos05.android.model.PhotoMetadata;
+import photos05.android.model.PhotoSortOrder;
 import photos05.android.model.Tag;
 import photos05.android.model.User;
 import photos05.android.util.DataManager;
+import photos05.android.util.LibraryIndexes;
+import photos05.android.util.MemoryGovernor;
+import photos05.android.util.TagTypeField;
+import photos05.android.util.ViewerPreloader;
+import photos05.android.util.ZoomableImageView;
 
 public class PhotoViewerActivity extends AppCompatActivity {
 
-    private ImageView imageView;
+    private ZoomableImageView imageView;
     private TextView captionText;
     private LinearLayout tagLayout;
     private Button nextButton, prevButton;
 
     private List<Photo> photos;
+    private PhotoSortOrder sortOrder;
     private int currentIndex;
     private User user;
     private Album currentAlbum;
     private GestureDetector gestureDetector;
+    private ViewerPreloader preloader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -63,9 +71,24 @@ public class PhotoViewerActivity extends AppCompatActivity {
             finish();
             return;
         }
-        photos = currentAlbum.getPhotos();
+        // The album's own list, shared rather than copied; it is replaced, not edited, on every change,
+        // so the viewer reads it again after removing a photo
+        String order = getIntent().getStringExtra("sortOrder");
+        sortOrder = order != null ? PhotoSortOrder.valueOf(order) : PhotoSortOrder.ADDED;
+        photos = currentAlbum.getPhotos(sortOrder);
         currentIndex = Math.max(0, Math.min(index, photos.size() - 1));
 
+        // Decode at screen size in the background, keeping neighbours ready for swipes
+        DisplayMetrics metrics = new DisplayMetrics();
+        getWindowManager().getDefaultDisplay().getMetrics(metrics);
+        preloader = new ViewerPreloader(getContentResolver(), metrics.widthPixels, metrics.heightPixels);
+        MemoryGovernor.get().register("Viewer photos", MemoryGovernor.PRIORITY_PRELOADED, preloader);
+        preloader.setOnBitmapReadyListener((loadedIndex, bitmap) -> {
+            if (loadedIndex == currentIndex) {
+                showBitmap(bitmap, photos.get(loadedIndex));
+            }
+        });
+
         updatePhotoView();
 
         nextButton.setOnClickListener(v -> {
@@ -101,7 +124,8 @@ public class PhotoViewerActivity extends AppCompatActivity {
             }
         });
 
-        imageView.setOnTouchListener((v, event) -> gestureDetector.onTouchEvent(event));
+        // Swipes navigate only while the photo is not zoomed in; otherwise they pan
+        imageView.setOnTouchListener((v, event) -> !imageView.isZoomed() && gestureDetector.onTouchEvent(event));
 
         imageView.setOnLongClickListener(v -> {
             showPhotoOptionsDialog(photos.get(currentIndex));
@@ -113,9 +137,16 @@ public class PhotoViewerActivity extends AppCompatActivity {
     // Method to update the photo view with the current photo
     private void updatePhotoView() {
         Photo currentPhoto = photos.get(currentIndex);
-        Uri photoUri = Uri.parse(currentPhoto.getFilePath());
-
-        imageView.setImageURI(photoUri);
+        String path = currentPhoto.getFilePath();
+        Uri photoUri = Uri.parse(path);
+
+        Bitmap preloaded = preloader.get(currentIndex, path);
+        if (preloaded != null || preloader.hasFailed(currentIndex, path)) {
+            showBitmap(preloaded, currentPhoto);
+        } else {
+            imageView.setImageDrawable(null);
+        }
+        preloader.preloadAround(currentIndex, photos);
 
         String fileName = photoUri.getLastPathSegment();
         captionText.setText(fileName != null ? fileName : "Unknown");
@@ -123,6 +154,18 @@ public class PhotoViewerActivity extends AppCompatActivity {
         refreshTagDisplay(currentPhoto);
     }
 
+    // Shows a decoded photo, or the fallback image if decoding failed
+    private void showBitmap(Bitmap bitmap, Photo photo) {
+        if (bitmap != null) {
+            // Screen-sized base layer; zooming in decodes tiles from the original
+            PhotoMetadata metadata = photo.getMetadata();
+            imageView.setImage(bitmap, Uri.parse(photo.getFilePath()),
+                    metadata != null ? metadata.getRotationDegrees() : 0);
+        } else {
+            imageView.setImageResource(android.R.drawable.ic_menu_report_image);
+        }
+    }
+
     private void refreshTagDisplay(Photo photo) {
         LinearLayout tagContainer = findViewById(R.id.tagContainer);
         tagContainer.removeAllViews();
@@ -142,6 +185,7 @@ public class PhotoViewerActivity extends AppCompatActivity {
             deleteBtn.setText("X");
             deleteBtn.setOnClickListener(v -> {
                 photo.removeTag(tag);
+                LibraryIndexes.tagRemoved(user, photo, tag);
                 DataManager.saveUser(user, this);
                 refreshTagDisplay(photo);
             });
@@ -166,12 +210,7 @@ public class PhotoViewerActivity extends AppCompatActivity {
         layout.setOrientation(LinearLayout.VERTICAL);
         layout.setPadding(50, 40, 50, 10);
 
-        Spinner tagTypeSpinner = new Spinner(this);
-        ArrayAdapter<String> spinnerAdapter = new ArrayAdapter<>(this,
-                android.R.layout.simple_spinner_item, new String[]{"Person", "Location"});
-        spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        tagTypeSpinner.setAdapter(spinnerAdapter);
-        layout.addView(tagTypeSpinner);
+        TagTypeField tagTypeField = new TagTypeField(this, user, layout);
 
         EditText tagValueInput = new EditText(this);
         tagValueInput.setHint("Enter tag value");
@@ -179,13 +218,14 @@ public class PhotoViewerActivity extends AppCompatActivity {
 
         builder.setView(layout);
         builder.setPositiveButton("Add", (dialog, which) -> {
-            String tagType = tagTypeSpinner.getSelectedItem().toString();
+            String tagType = tagTypeField.getType();
             String tagValue = tagValueInput.getText().toString().trim();
 
-            if (!tagValue.isEmpty()) {
+            if (!tagType.isEmpty() && !tagValue.isEmpty()) {
                 Tag newTag = new Tag(tagType, tagValue);
                 if (!photo.getTags().contains(newTag)) {
                     photo.addTag(newTag);
+                    LibraryIndexes.tagAdded(user, photo, newTag);
                     DataManager.saveUser(user, this);
                     refreshTagDisplay(photo);
                     Toast.makeText(this, "Tag added!", Toast.LENGTH_SHORT).show();
@@ -211,8 +251,9 @@ public class PhotoViewerActivity extends AppCompatActivity {
                         case 1: showAlbumPicker("Copy", selectedPhoto); break;
                         case 2: showAlbumPicker("Move", selectedPhoto); break;
                         case 3:
-                            photos.remove(currentIndex);
                             currentAlbum.removePhoto(selectedPhoto);
+                            LibraryIndexes.photoRemoved(user, selectedPhoto);
+                            photos = currentAlbum.getPhotos(sortOrder);
                             DataManager.saveUser(user, this);
                             Toast.makeText(this, "Photo deleted", Toast.LENGTH_SHORT).show();
 
@@ -246,13 +287,15 @@ public class PhotoViewerActivity extends AppCompatActivity {
                     if (targetAlbum == null) return;
 
                     try {
-                        Photo copy = new Photo(photo.getFilePath());
+                        Photo copy = photo.duplicate();
+                        LibraryIndexes.photoAdded(user, copy);
                         if (action.equals("Copy")) {
                             targetAlbum.addPhoto(copy);
                         } else if (action.equals("Move")) {
                             targetAlbum.addPhoto(copy);
-                            photos.remove(currentIndex);
                             currentAlbum.removePhoto(photo);
+                            LibraryIndexes.photoRemoved(user, photo);
+                            photos = currentAlbum.getPhotos(sortOrder);
                             if (photos.isEmpty()) {
                                 DataManager.saveUser(user, this);
                                 finish();
@@ -288,4 +331,31 @@ public class PhotoViewerActivity extends AppCompatActivity {
             updatePhotoView();
         }
     }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (preloader != null) {
+            // Neighbours dropped while stopped are decoded again
+            preloader.preloadAround(currentIndex, photos);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (preloader != null) {
+            // Only the viewer in front keeps screen-sized neighbours, so stacked viewers hold one bitmap each
+            preloader.trimTo(0);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (preloader != null) {
+            MemoryGovernor.get().unregister(preloader);
+            preloader.clear();
+        }
+    }
 }
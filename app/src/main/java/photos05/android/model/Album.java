@@ -1,22 +1,47 @@
 package photos05.android.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents an album in the photo album application.
  * Each album has a name, a list of photos, and methods to manage those photos.
+ * The photo list is copy-on-write: every change replaces it with a new
+ * unmodifiable list, so snapshots and background readers can keep the old one.
  * 
  * @author Kaileb Cole
  * @author Maxime Deperrois
  */
 public class Album implements Serializable {
     private static final long serialVersionUID = 1L;
+    // Rough heap cost of a photo's sort keys, of one list slot and of one content hash entry
+    private static final int SORT_KEY_BYTES = 120;
+    // A photo's tree node, entry and lookup slot in one sorted order, plus its slot in the copied-out list
+    private static final int VIEW_ENTRY_BYTES = 112;
+    private static final int HASH_ENTRY_BYTES = 120;
 
     private String name;
-    private List<Photo> photos;
+    // Replaced on the UI thread and read by snapshot readers on other threads
+    private volatile List<Photo> photos;
     private User user;
+    // Built on demand and reused until the album changes
+    private transient AlbumSnapshot snapshot;
+    // Photos by content hash, rebuilt on first use after loading
+    private transient Map<String, Photo> photosByHash;
+    // The photos in each order that has been asked for, kept sorted as photos come and go
+    private transient Map<PhotoSortOrder, SortedPhotoView> sortedViews;
+    // Kept up to date on every change; null until first computed for albums saved without one
+    private AlbumSummary summary;
 
     /**
      * Creates a new album with the given name.
@@ -25,7 +50,33 @@ public class Album implements Serializable {
      */
     public Album(String name) {
         this.name = name;
-        this.photos = new ArrayList<>();
+        this.photos = Collections.unmodifiableList(new ArrayList<>());
+    }
+
+    /**
+     * Creates a detached copy of an album snapshot for writing to storage.
+     * 
+     * @param snapshot the album snapshot to copy
+     */
+    Album(AlbumSnapshot snapshot) {
+        this.name = snapshot.getName();
+        this.photos = snapshot.getPhotos();
+        this.summary = snapshot.getSummary();
+    }
+
+    /**
+     * Restores an album, makes photo lists saved as plain lists unmodifiable and links each photo back to it.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the album cannot be read
+     * @throws ClassNotFoundException if a serialized class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        photos = Collections.unmodifiableList(new ArrayList<>(photos));
+        for (Photo photo : photos) {
+            photo.setAlbum(this);
+        }
     }
 
     /**
@@ -43,18 +94,79 @@ public class Album implements Serializable {
      * @param name the new name of the album
      */
     public void setName(String name) {
+        String oldName = this.name;
         this.name = name;
+        if (summary != null) {
+            summary = new AlbumSummary(name, summary.getPhotoCount(), summary.getCoverPath(), summary.getCoverWidth(),
+                    summary.getCoverHeight(), summary.getEarliestDate(), summary.getLatestDate());
+        }
+        changed();
+        publish(LibraryChange.albumRenamed(this, oldName));
     }
 
     /**
-     * Returns the list of photos in the album.
+     * Returns the photos in the album. The list never changes; later edits replace it.
      * 
-     * @return the list of photos
+     * @return an unmodifiable list of photos
      */
     public List<Photo> getPhotos() {
         return photos;
     }
 
+    /**
+     * Returns the photos in the given order. The first request for an order sorts the album
+     * once into a tree; after that each photo added, removed or retagged is placed in the tree
+     * by its sort keys, and the list is only copied out again when next requested.
+     *
+     * @param order the order to return the photos in
+     * @return an unmodifiable list of photos in that order
+     */
+    public List<Photo> getPhotos(PhotoSortOrder order) {
+        if (order == PhotoSortOrder.ADDED) {
+            return photos;
+        }
+        if (sortedViews == null) {
+            sortedViews = new EnumMap<>(PhotoSortOrder.class);
+        }
+        SortedPhotoView view = sortedViews.get(order);
+        if (view == null) {
+            view = new SortedPhotoView(order, photos);
+            sortedViews.put(order, view);
+        }
+        return view.getPhotos();
+    }
+
+    /**
+     * Returns roughly how much memory the album's sorted orders, the sort keys behind them
+     * and its content hash lookup take.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateDerivedBytes() {
+        long bytes = 0;
+        if (sortedViews != null && !sortedViews.isEmpty()) {
+            bytes += (long) photos.size() * (SORT_KEY_BYTES + VIEW_ENTRY_BYTES * sortedViews.size());
+        }
+        if (photosByHash != null) {
+            bytes += (long) photosByHash.size() * HASH_ENTRY_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the album's sorted orders, the photos' sort keys and the content hash lookup
+     * to give memory back. Each is rebuilt the next time it is needed.
+     */
+    public void releaseDerived() {
+        if (sortedViews != null) {
+            sortedViews = null;
+            for (Photo photo : photos) {
+                photo.releaseSortKeys();
+            }
+        }
+        photosByHash = null;
+    }
+
     /**
      * Adds a photo to the album.
      * 
@@ -62,7 +174,18 @@ public class Album implements Serializable {
      */
     public void addPhoto(Photo photo) {
         if(!photos.contains(photo)) {
-            photos.add(photo);
+            List<Photo> updated = new ArrayList<>(photos.size() + 1);
+            updated.addAll(photos);
+            updated.add(photo);
+            photos = Collections.unmodifiableList(updated);
+            if (photosByHash != null && photo.getContentHash() != null) {
+                photosByHash.put(photo.getContentHash(), photo);
+            }
+            photo.setAlbum(this);
+            summarizeAdded(photo);
+            sortAdded(Collections.singletonList(photo));
+            changed();
+            publish(LibraryChange.photosAdded(this, Collections.singletonList(photo)));
         }
     }
 
@@ -72,7 +195,317 @@ public class Album implements Serializable {
      * @param photo the photo to remove
      */
     public void removePhoto(Photo photo) {
-        photos.remove(photo);
+        int index = photos.indexOf(photo);
+        if (index < 0) {
+            return;
+        }
+        List<Photo> updated = new ArrayList<>(photos);
+        updated.remove(index);
+        photos = Collections.unmodifiableList(updated);
+        if (photosByHash != null && photo.getContentHash() != null
+                && photosByHash.get(photo.getContentHash()) == photo) {
+            photosByHash.remove(photo.getContentHash());
+        }
+        photo.clearAlbum(this);
+        summarizeRemoved(Collections.singletonList(photo));
+        sortRemoved(Collections.singleton(photo));
+        changed();
+        publish(LibraryChange.photosRemoved(this, Collections.singletonList(photo)));
+    }
+
+    /**
+     * Adds several photos at once, skipping any already in the album.
+     * 
+     * @param added the photos to add
+     */
+    public void addPhotos(Collection<Photo> added) {
+        Set<Photo> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        present.addAll(photos);
+        List<Photo> updated = new ArrayList<>(photos.size() + added.size());
+        updated.addAll(photos);
+        List<Photo> fresh = new ArrayList<>();
+        for (Photo photo : added) {
+            if (present.add(photo)) {
+                updated.add(photo);
+                fresh.add(photo);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+        photos = Collections.unmodifiableList(updated);
+        for (Photo photo : fresh) {
+            if (photosByHash != null && photo.getContentHash() != null) {
+                photosByHash.put(photo.getContentHash(), photo);
+            }
+            photo.setAlbum(this);
+            summarizeAdded(photo);
+        }
+        sortAdded(fresh);
+        changed();
+        publish(LibraryChange.photosAdded(this, fresh));
+    }
+
+    /**
+     * Removes several photos in a single pass over the album.
+     * 
+     * @param removed the photos to remove
+     */
+    public void removePhotos(Collection<Photo> removed) {
+        Set<Photo> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+        gone.addAll(removed);
+        Set<Photo> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        present.addAll(photos);
+        gone.retainAll(present);
+        if (gone.isEmpty()) {
+            return;
+        }
+        // Removed photos in album order, for listeners
+        List<Photo> removedInOrder = new ArrayList<>(gone.size());
+        List<Photo> updated = new ArrayList<>(photos.size());
+        for (Photo photo : photos) {
+            (gone.contains(photo) ? removedInOrder : updated).add(photo);
+        }
+        photos = Collections.unmodifiableList(updated);
+        for (Photo photo : removedInOrder) {
+            if (photosByHash != null && photo.getContentHash() != null && photosByHash.get(photo.getContentHash()) == photo) {
+                photosByHash.remove(photo.getContentHash());
+            }
+            photo.clearAlbum(this);
+        }
+        summarizeRemoved(removedInOrder);
+        sortRemoved(gone);
+        changed();
+        publish(LibraryChange.photosRemoved(this, removedInOrder));
+    }
+
+    /**
+     * Records whether photos of this album can be opened and reports the photos whose
+     * state changed as a single change.
+     *
+     * @param checked the photos that were checked
+     * @param missing true if they could not be opened
+     * @return true if the state of any photo changed
+     */
+    public boolean setMissing(Collection<Photo> checked, boolean missing) {
+        List<Photo> changedPhotos = new ArrayList<>();
+        for (Photo photo : checked) {
+            if (photo.updateMissing(missing)) {
+                changedPhotos.add(photo);
+            }
+        }
+        if (changedPhotos.isEmpty()) {
+            return false;
+        }
+        changed();
+        publish(LibraryChange.reachabilityChanged(this, changedPhotos));
+        return true;
+    }
+
+    /**
+     * Returns this album as it is now. The snapshot holds frozen copies of the photos, so
+     * later edits to a photo do not show through it, and it is reused until the album or
+     * one of its photos changes. Called on the UI thread, which makes every change.
+     * 
+     * @return the current album snapshot
+     */
+    public AlbumSnapshot snapshot() {
+        if (snapshot == null) {
+            List<Photo> frozen = new ArrayList<>(photos.size());
+            for (Photo photo : photos) {
+                frozen.add(photo.frozen());
+            }
+            snapshot = new AlbumSnapshot(name, Collections.unmodifiableList(frozen), getSummary());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the summary shown in the album list.
+     * 
+     * @return the photo count, cover and date range of the album
+     */
+    public AlbumSummary getSummary() {
+        if (summary == null) {
+            summary = computeSummary();
+        }
+        return summary;
+    }
+
+    /**
+     * Recomputes the summary from every photo, e.g. after capture dates were read for existing photos.
+     */
+    public void refreshSummary() {
+        summary = computeSummary();
+        changed();
+    }
+
+    private AlbumSummary computeSummary() {
+        long earliest = 0;
+        long latest = 0;
+        for (Photo photo : photos) {
+            long date = dateOf(photo);
+            if (date != 0) {
+                earliest = earliest == 0 ? date : Math.min(earliest, date);
+                latest = Math.max(latest, date);
+            }
+        }
+        return withCover(photos.isEmpty() ? null : photos.get(0), photos.size(), earliest, latest);
+    }
+
+    // Counts the new photo and widens the date range; the first photo becomes the cover
+    private void summarizeAdded(Photo photo) {
+        if (summary == null) {
+            return;
+        }
+        long earliest = summary.getEarliestDate();
+        long latest = summary.getLatestDate();
+        long date = dateOf(photo);
+        if (date != 0) {
+            earliest = earliest == 0 ? date : Math.min(earliest, date);
+            latest = Math.max(latest, date);
+        }
+        if (summary.getCoverPath() == null) {
+            summary = withCover(photo, photos.size(), earliest, latest);
+        } else {
+            summary = new AlbumSummary(name, photos.size(), summary.getCoverPath(), summary.getCoverWidth(),
+                    summary.getCoverHeight(), earliest, latest);
+        }
+    }
+
+    // Only rescans the album when a removed photo was the cover or at an end of the date range
+    private void summarizeRemoved(Collection<Photo> removed) {
+        if (summary == null) {
+            return;
+        }
+        for (Photo photo : removed) {
+            long date = dateOf(photo);
+            if (photo.getFilePath().equals(summary.getCoverPath())
+                    || (date != 0 && (date == summary.getEarliestDate() || date == summary.getLatestDate()))) {
+                summary = computeSummary();
+                return;
+            }
+        }
+        summary = new AlbumSummary(name, photos.size(), summary.getCoverPath(), summary.getCoverWidth(),
+                summary.getCoverHeight(), summary.getEarliestDate(), summary.getLatestDate());
+    }
+
+    /**
+     * Reports a tag change on one of this album's photos to the user's listener.
+     *
+     * @param photo the photo whose tags changed
+     * @param tag the tag added or removed
+     * @param added true if the tag was added, false if it was removed
+     */
+    void tagChanged(Photo photo, Tag tag, boolean added) {
+        if (sortedViews != null) {
+            for (Map.Entry<PhotoSortOrder, SortedPhotoView> view : sortedViews.entrySet()) {
+                if (view.getKey().dependsOnTags()) {
+                    view.getValue().move(photo);
+                }
+            }
+        }
+        changed();
+        publish(added ? LibraryChange.tagAdded(this, photo, tag) : LibraryChange.tagRemoved(this, photo, tag));
+    }
+
+    /**
+     * Moves a photo to its new place in the orders that depend on its metadata after it was read again,
+     * so they stay sorted without sorting the album again.
+     *
+     * @param photo the photo whose metadata changed
+     */
+    void sortKeysChanged(Photo photo) {
+        if (sortedViews != null) {
+            for (Map.Entry<PhotoSortOrder, SortedPhotoView> view : sortedViews.entrySet()) {
+                if (!view.getKey().dependsOnTags()) {
+                    view.getValue().move(photo);
+                }
+            }
+        }
+        changed();
+    }
+
+    // Places new photos in every sorted order, one tree insertion per photo and order
+    private void sortAdded(List<Photo> added) {
+        if (sortedViews == null) {
+            return;
+        }
+        for (SortedPhotoView view : sortedViews.values()) {
+            view.addAll(added);
+        }
+    }
+
+    // Takes removed photos out of every sorted order, one tree removal per photo and order
+    private void sortRemoved(Set<Photo> removed) {
+        if (sortedViews == null) {
+            return;
+        }
+        for (SortedPhotoView view : sortedViews.values()) {
+            view.removeAll(removed);
+        }
+    }
+
+    private void publish(LibraryChange change) {
+        if (user != null) {
+            user.publish(change);
+        }
+    }
+
+    /**
+     * Records that a photo of this album was given new analysis results, so the next
+     * snapshot is a new version.
+     *
+     * @param photo the photo that changed
+     */
+    void photoChanged(Photo photo) {
+        changed();
+    }
+
+    // Drops the cached snapshot and tells the owning user a new library version exists
+    private void changed() {
+        snapshot = null;
+        if (user != null) {
+            user.albumChanged();
+        }
+    }
+
+    private AlbumSummary withCover(Photo cover, int count, long earliest, long latest) {
+        if (cover == null) {
+            return new AlbumSummary(name, count, null, 0, 0, earliest, latest);
+        }
+        PhotoMetadata metadata = cover.getMetadata();
+        return new AlbumSummary(name, count, cover.getFilePath(), metadata != null ? metadata.getWidth() : 0,
+                metadata != null ? metadata.getHeight() : 0, earliest, latest);
+    }
+
+    private static long dateOf(Photo photo) {
+        return photo.getMetadata() != null ? photo.getMetadata().getDateTaken() : 0;
+    }
+
+    /**
+     * Returns the photo in this album with the given content hash.
+     * 
+     * @param contentHash the content hash to look up
+     * @return the matching photo, or null if the album has none
+     */
+    public Photo findByContentHash(String contentHash) {
+        if (photosByHash == null) {
+            reindexContentHashes();
+        }
+        return photosByHash.get(contentHash);
+    }
+
+    /**
+     * Rebuilds the content hash index, e.g. after hashes were computed for existing photos.
+     */
+    public void reindexContentHashes() {
+        photosByHash = new HashMap<>();
+        for (Photo photo : photos) {
+            if (photo.getContentHash() != null) {
+                photosByHash.put(photo.getContentHash(), photo);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,59 @@
+package photos05.android.model;
+
+import java.util.List;
+
+/**
+ * Represents one album as it was at a given library version.
+ * The photos are frozen copies with the same ids as the live ones, so neither the
+ * list nor any photo in it changes afterwards. Each photo is copied once per edit,
+ * not once per snapshot; unedited photos share their copy between versions.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public class AlbumSnapshot {
+    private final String name;
+    private final List<Photo> photos;
+    private final AlbumSummary summary;
+
+    /**
+     * Creates the snapshot of an album.
+     *
+     * @param name the name of the album
+     * @param photos frozen copies of the album's photos, in album order
+     * @param summary the album's current summary
+     */
+    AlbumSnapshot(String name, List<Photo> photos, AlbumSummary summary) {
+        this.name = name;
+        this.photos = photos;
+        this.summary = summary;
+    }
+
+    /**
+     * Returns the name of the album.
+     *
+     * @return the name of the album
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the photos of the album at this version. They are copies, so match them to
+     * the live photos by id, not by identity.
+     *
+     * @return an unmodifiable list of read-only photos
+     */
+    public List<Photo> getPhotos() {
+        return photos;
+    }
+
+    /**
+     * Returns the summary of the album at this version.
+     *
+     * @return the summary of the album
+     */
+    public AlbumSummary getSummary() {
+        return summary;
+    }
+}
@@ -0,0 +1,135 @@
+package photos05.android.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Represents what the album list shows about an album without loading its photos:
+ * the photo count, the cover photo and the range of capture dates.
+ * Albums keep their summary up to date as photos are added and removed.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public class AlbumSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final int photoCount;
+    private final String coverPath;
+    private final int coverWidth;
+    private final int coverHeight;
+    private final long earliestDate;
+    private final long latestDate;
+
+    /**
+     * Creates the summary of an album.
+     *
+     * @param name the name of the album
+     * @param photoCount the number of photos in the album
+     * @param coverPath the file path of the cover photo, or null if the album is empty
+     * @param coverWidth the width of the cover image in pixels, or 0 if unknown
+     * @param coverHeight the height of the cover image in pixels, or 0 if unknown
+     * @param earliestDate the earliest capture time in milliseconds since the epoch, or 0 if unknown
+     * @param latestDate the latest capture time in milliseconds since the epoch, or 0 if unknown
+     */
+    public AlbumSummary(String name, int photoCount, String coverPath, int coverWidth, int coverHeight,
+                        long earliestDate, long latestDate) {
+        this.name = name;
+        this.photoCount = photoCount;
+        this.coverPath = coverPath;
+        this.coverWidth = coverWidth;
+        this.coverHeight = coverHeight;
+        this.earliestDate = earliestDate;
+        this.latestDate = latestDate;
+    }
+
+    /**
+     * Returns the name of the album.
+     *
+     * @return the name of the album
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of photos in the album.
+     *
+     * @return the photo count
+     */
+    public int getPhotoCount() {
+        return photoCount;
+    }
+
+    /**
+     * Returns the file path of the cover photo.
+     *
+     * @return the cover path, or null if the album is empty
+     */
+    public String getCoverPath() {
+        return coverPath;
+    }
+
+    /**
+     * Returns the width of the cover image.
+     *
+     * @return the width in pixels, or 0 if unknown
+     */
+    public int getCoverWidth() {
+        return coverWidth;
+    }
+
+    /**
+     * Returns the height of the cover image.
+     *
+     * @return the height in pixels, or 0 if unknown
+     */
+    public int getCoverHeight() {
+        return coverHeight;
+    }
+
+    /**
+     * Returns the capture time of the oldest photo with a known date.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if no photo has a date
+     */
+    public long getEarliestDate() {
+        return earliestDate;
+    }
+
+    /**
+     * Returns the capture time of the newest photo with a known date.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if no photo has a date
+     */
+    public long getLatestDate() {
+        return latestDate;
+    }
+
+    /**
+     * Compares every field, so the album list can tell which rows changed.
+     *
+     * @param obj the object to compare with
+     * @return true if both summaries show the same thing
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        AlbumSummary other = (AlbumSummary) obj;
+        return photoCount == other.photoCount && coverWidth == other.coverWidth && coverHeight == other.coverHeight
+                && earliestDate == other.earliestDate && latestDate == other.latestDate
+                && name.equals(other.name) && Objects.equals(coverPath, other.coverPath);
+    }
+
+    /**
+     * Returns the hash code of the summary.
+     *
+     * @return the hash code of the summary
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, photoCount, coverPath, earliestDate, latestDate);
+    }
+}
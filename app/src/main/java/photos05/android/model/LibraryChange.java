@@ -0,0 +1,126 @@
+package photos05.android.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents one change to a user's library: an album added, removed or renamed,
+ * photos added to or removed from an album, a tag added to or removed from a photo,
+ * or photos found missing or reachable again.
+ * Photo changes carry every photo affected by one operation, so a batch of
+ * edits is a single change.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public class LibraryChange {
+
+    /**
+     * The kinds of change. RESYNC means individual changes were dropped and
+     * listeners should refresh from the library itself.
+     */
+    public enum Type {
+        ALBUM_ADDED, ALBUM_REMOVED, ALBUM_RENAMED, PHOTOS_ADDED, PHOTOS_REMOVED, TAG_ADDED, TAG_REMOVED, REACHABILITY_CHANGED, RESYNC
+    }
+
+    private final Type type;
+    private final Album album;
+    private final String oldAlbumName;
+    private final List<Photo> photos;
+    private final Tag tag;
+
+    private LibraryChange(Type type, Album album, String oldAlbumName, List<Photo> photos, Tag tag) {
+        this.type = type;
+        this.album = album;
+        this.oldAlbumName = oldAlbumName;
+        this.photos = photos;
+        this.tag = tag;
+    }
+
+    static LibraryChange albumAdded(Album album) {
+        return new LibraryChange(Type.ALBUM_ADDED, album, null, Collections.emptyList(), null);
+    }
+
+    static LibraryChange albumRemoved(Album album) {
+        return new LibraryChange(Type.ALBUM_REMOVED, album, null, Collections.emptyList(), null);
+    }
+
+    static LibraryChange albumRenamed(Album album, String oldName) {
+        return new LibraryChange(Type.ALBUM_RENAMED, album, oldName, Collections.emptyList(), null);
+    }
+
+    static LibraryChange photosAdded(Album album, List<Photo> photos) {
+        return new LibraryChange(Type.PHOTOS_ADDED, album, null, Collections.unmodifiableList(photos), null);
+    }
+
+    static LibraryChange photosRemoved(Album album, List<Photo> photos) {
+        return new LibraryChange(Type.PHOTOS_REMOVED, album, null, Collections.unmodifiableList(photos), null);
+    }
+
+    static LibraryChange tagAdded(Album album, Photo photo, Tag tag) {
+        return new LibraryChange(Type.TAG_ADDED, album, null, Collections.singletonList(photo), tag);
+    }
+
+    static LibraryChange tagRemoved(Album album, Photo photo, Tag tag) {
+        return new LibraryChange(Type.TAG_REMOVED, album, null, Collections.singletonList(photo), tag);
+    }
+
+    static LibraryChange reachabilityChanged(Album album, List<Photo> photos) {
+        return new LibraryChange(Type.REACHABILITY_CHANGED, album, null, Collections.unmodifiableList(photos), null);
+    }
+
+    /**
+     * Creates the change that stands in for changes a listener could not keep.
+     *
+     * @return a RESYNC change
+     */
+    public static LibraryChange resync() {
+        return new LibraryChange(Type.RESYNC, null, null, Collections.emptyList(), null);
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return the type of the change
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the album that changed or holds the changed photos.
+     *
+     * @return the album, or null for RESYNC
+     */
+    public Album getAlbum() {
+        return album;
+    }
+
+    /**
+     * Returns the name the album had before it was renamed.
+     *
+     * @return the old name for ALBUM_RENAMED, otherwise null
+     */
+    public String getOldAlbumName() {
+        return oldAlbumName;
+    }
+
+    /**
+     * Returns the photos added or removed, the photo whose tags changed, or the photos
+     * whose missing state changed.
+     *
+     * @return an unmodifiable list of photos, empty for album changes
+     */
+    public List<Photo> getPhotos() {
+        return photos;
+    }
+
+    /**
+     * Returns the tag that was added or removed.
+     *
+     * @return the tag for TAG_ADDED and TAG_REMOVED, otherwise null
+     */
+    public Tag getTag() {
+        return tag;
+    }
+}
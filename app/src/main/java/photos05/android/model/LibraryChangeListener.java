@@ -0,0 +1,16 @@
+package photos05.android.model;
+
+/**
+ * Receives every change made to a user's library, right after it is applied.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public interface LibraryChangeListener {
+    /**
+     * Called after the library changed.
+     *
+     * @param change what changed
+     */
+    void onLibraryChanged(LibraryChange change);
+}
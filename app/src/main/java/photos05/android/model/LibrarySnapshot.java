@@ -0,0 +1,90 @@
+package photos05.android.model;
+
+import java.util.List;
+
+/**
+ * Represents an immutable version of a user's whole library.
+ * Writers change the live User and Album objects on the UI thread; every change
+ * makes the next snapshot a new version. Albums that did not change are shared
+ * between versions, so a snapshot costs one small object per changed album.
+ * Snapshots can be read from any thread without locks, e.g. for searching or saving.
+ * Photos are frozen copies too, so a snapshot never sees an edit made after it was taken.
+ * Snapshots are taken on the UI thread, which makes every change to the library.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public class LibrarySnapshot {
+    private final long version;
+    private final String username;
+    private final List<AlbumSnapshot> albums;
+
+    /**
+     * Creates a snapshot of a library.
+     *
+     * @param version the version number, increasing with every change
+     * @param username the name of the user
+     * @param albums the album snapshots in album order
+     */
+    LibrarySnapshot(long version, String username, List<AlbumSnapshot> albums) {
+        this.version = version;
+        this.username = username;
+        this.albums = albums;
+    }
+
+    /**
+     * Returns the version of the library this snapshot was taken at.
+     *
+     * @return the version number
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the name of the user.
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the albums at this version.
+     *
+     * @return an unmodifiable list of album snapshots
+     */
+    public List<AlbumSnapshot> getAlbums() {
+        return albums;
+    }
+
+    /**
+     * Returns the album with the given name, ignoring case.
+     *
+     * @param name the name of the album
+     * @return the album snapshot, or null if there is none
+     */
+    public AlbumSnapshot getAlbum(String name) {
+        for (AlbumSnapshot album : albums) {
+            if (album.getName().equalsIgnoreCase(name)) {
+                return album;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rebuilds a detached User for writing to storage. It shares the photo lists
+     * and frozen photos of this snapshot, so it must only be read, never changed.
+     *
+     * @return a user holding this version of the library
+     */
+    public User toUser() {
+        User user = new User(username);
+        for (AlbumSnapshot snapshot : albums) {
+            user.addAlbum(new Album(snapshot));
+        }
+        return user;
+    }
+}
@@ -4,9 +4,12 @@ import android.net.Uri;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * Represents a photo in the photo album application.
@@ -18,8 +21,23 @@ import java.util.List;
 public class Photo implements Serializable{
     private static final long serialVersionUID = 1L;
 
+    private long id;
     private String filePath;
-    private List<Tag> tags;
+    // Fields below are replaced, never edited, on the UI thread; snapshots hold frozen copies,
+    // and other threads that read a live photo see whole values since the fields are volatile
+    private volatile List<Tag> tags;
+    // The album holding this photo, which reports its changes
+    private transient Album album;
+    private volatile PhotoMetadata metadata;
+    private volatile String contentHash;
+    private volatile Long perceptualHash;
+    private volatile byte[] colorSignature;
+    // Set when the image could not be opened the last time it was checked
+    private volatile boolean missing;
+    // Worked out on first use and dropped when the metadata or tags change
+    private transient PhotoSortKeys sortKeys;
+    // Read-only copy handed to snapshots, reused until the photo next changes
+    private transient Photo frozen;
 
     /**
      * Creates a new photo at the given file path.
@@ -28,8 +46,9 @@ public class Photo implements Serializable{
      * @throws IOException if the file path is invalid
      */
     public Photo(String filePath) throws IOException {
+        this.id = UUID.randomUUID().getMostSignificantBits();
         this.filePath = filePath;
-        this.tags = new ArrayList<>();
+        this.tags = Collections.unmodifiableList(new ArrayList<>());
 
         if (filePath.startsWith("file://")) {
             File file = new File(Uri.parse(filePath).getPath());
@@ -39,6 +58,81 @@ public class Photo implements Serializable{
         }
     }
 
+    /**
+     * Creates a read-only copy of a photo with the same id and state, linked to no album.
+     *
+     * @param source the photo to copy
+     */
+    private Photo(Photo source) {
+        this.id = source.id;
+        this.filePath = source.filePath;
+        this.tags = source.tags;
+        this.metadata = source.metadata;
+        this.contentHash = source.contentHash;
+        this.perceptualHash = source.perceptualHash;
+        this.colorSignature = source.colorSignature;
+        this.missing = source.missing;
+    }
+
+    /**
+     * Creates a new photo for the same image, carrying over the metadata and hashes
+     * read at import time. Tags are not copied.
+     * 
+     * @return the new photo
+     * @throws IOException if the file path is no longer valid
+     */
+    public Photo duplicate() throws IOException {
+        Photo copy = new Photo(filePath);
+        copy.metadata = metadata;
+        copy.contentHash = contentHash;
+        copy.perceptualHash = perceptualHash;
+        copy.colorSignature = colorSignature;
+        return copy;
+    }
+
+    /**
+     * Creates a new photo for a copy of the image stored at another path, carrying over
+     * the tags, metadata and hashes. Used when a library is restored from an archive.
+     *
+     * @param filePath the file path of the copied image
+     * @return the new photo
+     * @throws IOException if the file path is invalid
+     */
+    public Photo copyTo(String filePath) throws IOException {
+        Photo copy = new Photo(filePath);
+        copy.tags = tags;
+        copy.metadata = metadata;
+        copy.contentHash = contentHash;
+        copy.perceptualHash = perceptualHash;
+        copy.colorSignature = colorSignature;
+        return copy;
+    }
+
+    /**
+     * Restores a photo, makes its tag list unmodifiable and assigns an id to photos saved before ids existed.
+     * The id is random like a new photo's, since copies of one image in several albums share a file path;
+     * it is kept from the next save on.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the photo cannot be read
+     * @throws ClassNotFoundException if a serialized class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tags = Collections.unmodifiableList(new ArrayList<>(tags));
+        if (id == 0) {
+            id = UUID.randomUUID().getMostSignificantBits();
+        }
+    }
+
+    /**
+     * Returns the stable id of the photo, used to track it across list updates.
+     *
+     * @return the id of the photo
+     */
+    public long getId() {
+        return id;
+    }
 
     /**
      * Returns the file path of the photo.
@@ -50,9 +144,170 @@ public class Photo implements Serializable{
     }
 
     /**
-     * Returns the list of tags of the photo.
+     * Returns the metadata read when the photo was imported.
+     * 
+     * @return the metadata, or null if it has not been read yet
+     */
+    public PhotoMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Sets the metadata of the photo.
+     * 
+     * @param metadata the metadata read from the image
+     */
+    public void setMetadata(PhotoMetadata metadata) {
+        this.metadata = metadata;
+        sortKeys = null;
+        frozen = null;
+        if (album != null) {
+            album.sortKeysChanged(this);
+        }
+    }
+
+    /**
+     * Returns the digest of the image bytes, used to detect duplicates picked through different URIs.
+     * 
+     * @return the content hash, or null if it has not been computed yet
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Sets the digest of the image bytes.
+     * 
+     * @param contentHash the content hash
+     */
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+        frozen = null;
+        if (album != null) {
+            album.photoChanged(this);
+        }
+    }
+
+    /**
+     * Returns the perceptual hash of the image, which is close for visually similar photos.
+     * 
+     * @return the 64-bit difference hash, or null if it has not been computed yet
+     */
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    /**
+     * Sets the perceptual hash of the image.
+     * 
+     * @param perceptualHash the 64-bit difference hash
+     */
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+        frozen = null;
+        if (album != null) {
+            album.photoChanged(this);
+        }
+    }
+
+    /**
+     * Returns the colour signature of the image: the share of the image taken by each palette colour.
+     * 
+     * @return the colour signature, or null if it has not been computed yet
+     */
+    public byte[] getColorSignature() {
+        return colorSignature;
+    }
+
+    /**
+     * Sets the colour signature of the image.
      * 
-     * @return the list of tags of the photo
+     * @param colorSignature the colour signature
+     */
+    public void setColorSignature(byte[] colorSignature) {
+        this.colorSignature = colorSignature;
+        frozen = null;
+        if (album != null) {
+            album.photoChanged(this);
+        }
+    }
+
+    /**
+     * Returns whether the image could not be opened the last time it was checked,
+     * because the file was deleted or the permission to read it was revoked.
+     *
+     * @return true if the image is missing
+     */
+    public boolean isMissing() {
+        return missing;
+    }
+
+    /**
+     * Records whether the image can be opened. A change is reported through the album holding the photo.
+     *
+     * @param missing true if the image could not be opened
+     */
+    public void setMissing(boolean missing) {
+        if (album != null) {
+            album.setMissing(Collections.singletonList(this), missing);
+        } else {
+            this.missing = missing;
+            frozen = null;
+        }
+    }
+
+    /**
+     * Records whether the image can be opened without reporting it.
+     *
+     * @param missing true if the image could not be opened
+     * @return true if this changed the recorded state
+     */
+    boolean updateMissing(boolean missing) {
+        if (this.missing == missing) {
+            return false;
+        }
+        this.missing = missing;
+        frozen = null;
+        return true;
+    }
+
+    /**
+     * Returns the values this photo is sorted by, computing them on first use.
+     *
+     * @return the sort keys of the photo
+     */
+    public PhotoSortKeys getSortKeys() {
+        if (sortKeys == null) {
+            sortKeys = new PhotoSortKeys(this);
+        }
+        return sortKeys;
+    }
+
+    /**
+     * Returns a read-only copy of the photo as it is now, for snapshots. The copy is reused
+     * until the photo changes, so a snapshot only copies the photos edited since the last one.
+     * Called on the UI thread, which makes every change to the photo.
+     *
+     * @return a copy of the photo that never changes
+     */
+    Photo frozen() {
+        if (frozen == null) {
+            frozen = new Photo(this);
+        }
+        return frozen;
+    }
+
+    /**
+     * Drops the sort keys to give memory back; they are computed again on next use.
+     */
+    void releaseSortKeys() {
+        sortKeys = null;
+    }
+
+    /**
+     * Returns the tags of the photo. The list never changes; adding or removing a tag replaces it.
+     * 
+     * @return an unmodifiable list of tags
      */
     public List<Tag> getTags() {
         return tags;
@@ -64,7 +319,14 @@ public class Photo implements Serializable{
      * @param tag the tag to add
      */
     public void addTag(Tag tag) {
-        tags.add(tag);
+        List<Tag> updated = new ArrayList<>(tags);
+        updated.add(tag);
+        tags = Collections.unmodifiableList(updated);
+        sortKeys = null;
+        frozen = null;
+        if (album != null) {
+            album.tagChanged(this, tag, true);
+        }
     }
 
     /**
@@ -73,6 +335,34 @@ public class Photo implements Serializable{
      * @param tag the tag to remove
      */
     public void removeTag(Tag tag) {
-        tags.remove(tag);
+        List<Tag> updated = new ArrayList<>(tags);
+        if (updated.remove(tag)) {
+            tags = Collections.unmodifiableList(updated);
+            sortKeys = null;
+            frozen = null;
+            if (album != null) {
+                album.tagChanged(this, tag, false);
+            }
+        }
+    }
+
+    /**
+     * Links the photo to the album that now holds it.
+     *
+     * @param album the album holding the photo
+     */
+    void setAlbum(Album album) {
+        this.album = album;
+    }
+
+    /**
+     * Unlinks the photo after it was removed from the given album.
+     *
+     * @param album the album the photo was removed from
+     */
+    void clearAlbum(Album album) {
+        if (this.album == album) {
+            this.album = null;
+        }
     }
 }
@@ -0,0 +1,83 @@
+package photos05.android.model;
+
+import java.io.Serializable;
+
+/**
+ * Represents the image properties of a photo, read once when it is imported.
+ * Holds the pixel dimensions, capture date, file size and orientation so they
+ * do not have to be probed from the image again.
+ * 
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public class PhotoMetadata implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int width;
+    private final int height;
+    private final long dateTaken;
+    private final long byteSize;
+    private final int rotationDegrees;
+
+    /**
+     * Creates the metadata of a photo.
+     * 
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param dateTaken the capture time in milliseconds since the epoch, or 0 if unknown
+     * @param byteSize the size of the image file in bytes, or -1 if unknown
+     * @param rotationDegrees the clockwise rotation needed to display the image upright
+     */
+    public PhotoMetadata(int width, int height, long dateTaken, long byteSize, int rotationDegrees) {
+        this.width = width;
+        this.height = height;
+        this.dateTaken = dateTaken;
+        this.byteSize = byteSize;
+        this.rotationDegrees = rotationDegrees;
+    }
+
+    /**
+     * Returns the width of the image as stored, before rotation.
+     * 
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image as stored, before rotation.
+     * 
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the capture time of the photo.
+     * 
+     * @return the capture time in milliseconds since the epoch, or 0 if unknown
+     */
+    public long getDateTaken() {
+        return dateTaken;
+    }
+
+    /**
+     * Returns the size of the image file.
+     * 
+     * @return the size in bytes, or -1 if unknown
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Returns the rotation needed to display the image upright.
+     * 
+     * @return 0, 90, 180 or 270
+     */
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+}
@@ -0,0 +1,91 @@
+package photos05.android.model;
+
+import android.net.Uri;
+
+import java.text.CollationKey;
+import java.text.Collator;
+
+/**
+ * Represents the values an album can be sorted by, worked out once per photo so that
+ * comparing two photos is only a few field reads. The file name is kept as a collation
+ * key, which compares in the user's language order without re-collating the strings.
+ * A photo drops its keys whenever its metadata or tags change.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public class PhotoSortKeys {
+    private static final Collator COLLATOR = Collator.getInstance();
+
+    private final long dateTaken;
+    private final CollationKey name;
+    private final long byteSize;
+    private final int tagCount;
+
+    /**
+     * Computes the sort keys of a photo.
+     *
+     * @param photo the photo to compute the keys of
+     */
+    PhotoSortKeys(Photo photo) {
+        PhotoMetadata metadata = photo.getMetadata();
+        this.dateTaken = metadata != null ? metadata.getDateTaken() : 0;
+        this.byteSize = metadata != null ? metadata.getByteSize() : 0;
+        this.tagCount = photo.getTags().size();
+        synchronized (COLLATOR) {
+            this.name = COLLATOR.getCollationKey(fileName(photo.getFilePath()));
+        }
+    }
+
+    /**
+     * Returns the capture time of the photo.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if unknown
+     */
+    public long getDateTaken() {
+        return dateTaken;
+    }
+
+    /**
+     * Returns the file name of the photo as a collation key.
+     *
+     * @return the collation key of the file name
+     */
+    public CollationKey getName() {
+        return name;
+    }
+
+    /**
+     * Returns the size of the image file.
+     *
+     * @return the size in bytes, or 0 if unknown
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Returns the number of tags on the photo.
+     *
+     * @return the tag count
+     */
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    /**
+     * Returns the last part of a file path or document URI, e.g. "IMG_0042.jpg" for
+     * "content://.../document/primary%3ADCIM%2FIMG_0042.jpg".
+     *
+     * @param filePath the file path of the photo
+     * @return the file name
+     */
+    private static String fileName(String filePath) {
+        String segment = Uri.parse(filePath).getLastPathSegment();
+        if (segment == null) {
+            segment = filePath;
+        }
+        int start = Math.max(segment.lastIndexOf('/'), segment.lastIndexOf(':')) + 1;
+        return segment.substring(start);
+    }
+}
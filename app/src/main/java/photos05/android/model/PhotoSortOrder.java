@@ -0,0 +1,63 @@
+package photos05.android.model;
+
+import java.util.Comparator;
+
+/**
+ * Represents the orders an album can be shown in. Every order except ADDED compares the
+ * photos' precomputed sort keys; albums fall back to the photo id, so no two photos tie.
+ * Photos with an unknown date or size come last.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+public enum PhotoSortOrder {
+    // The order photos were added in, which is the album's own order
+    ADDED("Date Added", null),
+    // Newest capture first
+    DATE_TAKEN("Date Taken", (a, b) -> Long.compare(unknownLast(b.getDateTaken()), unknownLast(a.getDateTaken()))),
+    // File name, A to Z
+    NAME("File Name", (a, b) -> a.getName().compareTo(b.getName())),
+    // Largest file first
+    SIZE("File Size", (a, b) -> Long.compare(unknownLast(b.getByteSize()), unknownLast(a.getByteSize()))),
+    // Most tags first
+    TAG_COUNT("Tag Count", (a, b) -> Integer.compare(b.getTagCount(), a.getTagCount()));
+
+    private final String label;
+    private final Comparator<PhotoSortKeys> comparator;
+
+    PhotoSortOrder(String label, Comparator<PhotoSortKeys> comparator) {
+        this.label = label;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns the name shown to the user.
+     *
+     * @return the label of the order
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the comparator of the order on sort keys, without the id tie-break.
+     *
+     * @return the comparator, or null for ADDED
+     */
+    Comparator<PhotoSortKeys> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Returns whether the order depends on the photo's tags.
+     *
+     * @return true if a tag change can move a photo in this order
+     */
+    boolean dependsOnTags() {
+        return this == TAG_COUNT;
+    }
+
+    private static long unknownLast(long value) {
+        return value == 0 ? Long.MIN_VALUE : value;
+    }
+}
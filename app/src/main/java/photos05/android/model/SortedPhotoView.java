@@ -0,0 +1,116 @@
+package photos05.android.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Represents one sorted order of an album's photos, kept in a tree by each photo's
+ * precomputed sort keys and id. Adding, removing or moving a photo costs a tree update;
+ * the order is only copied out into a list when it is asked for after a change.
+ * Each entry keeps the keys the photo was placed with, so a photo whose keys have just
+ * been dropped can still be found and moved.
+ *
+ * @author Kaileb Cole
+ * @author Maxime Deperrois
+ */
+class SortedPhotoView {
+
+    private static class Entry {
+        final PhotoSortKeys keys;
+        final Photo photo;
+
+        Entry(Photo photo) {
+            this.keys = photo.getSortKeys();
+            this.photo = photo;
+        }
+    }
+
+    private final TreeSet<Entry> tree;
+    private final Map<Photo, Entry> entries = new IdentityHashMap<>();
+    // The order as a list, built on request and dropped on the next change
+    private List<Photo> list;
+
+    /**
+     * Creates the order of the given photos.
+     *
+     * @param order the order to keep
+     * @param photos the photos to sort
+     */
+    SortedPhotoView(PhotoSortOrder order, Collection<Photo> photos) {
+        Comparator<PhotoSortKeys> keys = order.comparator();
+        tree = new TreeSet<>((a, b) -> {
+            int result = keys.compare(a.keys, b.keys);
+            return result != 0 ? result : Long.compare(a.photo.getId(), b.photo.getId());
+        });
+        addAll(photos);
+    }
+
+    /**
+     * Returns the photos in order, copying them out of the tree only if it changed since the last call.
+     *
+     * @return an unmodifiable list of photos in this order
+     */
+    List<Photo> getPhotos() {
+        if (list == null) {
+            List<Photo> copy = new ArrayList<>(tree.size());
+            for (Entry entry : tree) {
+                copy.add(entry.photo);
+            }
+            list = Collections.unmodifiableList(copy);
+        }
+        return list;
+    }
+
+    /**
+     * Places new photos in the order.
+     *
+     * @param added the photos to add
+     */
+    void addAll(Collection<Photo> added) {
+        for (Photo photo : added) {
+            Entry entry = new Entry(photo);
+            if (entries.put(photo, entry) == null) {
+                tree.add(entry);
+            }
+        }
+        list = null;
+    }
+
+    /**
+     * Takes photos out of the order.
+     *
+     * @param removed the photos to remove
+     */
+    void removeAll(Collection<Photo> removed) {
+        for (Photo photo : removed) {
+            Entry entry = entries.remove(photo);
+            if (entry != null) {
+                tree.remove(entry);
+            }
+        }
+        list = null;
+    }
+
+    /**
+     * Moves a photo whose sort keys changed to its new place.
+     *
+     * @param photo the photo to move
+     */
+    void move(Photo photo) {
+        Entry old = entries.remove(photo);
+        if (old == null) {
+            return;
+        }
+        tree.remove(old);
+        Entry entry = new Entry(photo);
+        entries.put(photo, entry);
+        tree.add(entry);
+        list = null;
+    }
+}
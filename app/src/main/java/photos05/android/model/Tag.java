@@ -12,8 +12,8 @@ import java.io.Serializable;
  * @author Maxime Deperrois
  */
 public class Tag implements Serializable {
-    private String name;
-    private String value;
+    private final String name;
+    private final String value;
 
     /**
      * Creates a new tag with the given name and value.
@@ -1,7 +1,10 @@
 package photos05.android.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -13,12 +16,19 @@ import java.util.List;
  */
 /**
  * Represents a user with a username and a list of albums.
+ * The album list is copy-on-write, and every change to the user or one of its
+ * albums makes snapshot() return a new LibrarySnapshot version.
  */
 public class User implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private String username;
-    private List<Album> albums;
+    // Replaced on the UI thread and read by snapshot readers on other threads
+    private volatile List<Album> albums;
+    // Latest snapshot, dropped whenever the library changes
+    private transient LibrarySnapshot snapshot;
+    private transient long version;
+    private transient LibraryChangeListener changeListener;
 
     /**
      * Constructs a new User with the specified username.
@@ -27,7 +37,22 @@ public class User implements Serializable {
      */
     public User(String username) {
         this.username = username;
-        this.albums = new ArrayList<>();
+        this.albums = Collections.unmodifiableList(new ArrayList<>());
+    }
+
+    /**
+     * Restores a user, makes the album list unmodifiable and links each album back to it.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the user cannot be read
+     * @throws ClassNotFoundException if a serialized class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        albums = Collections.unmodifiableList(new ArrayList<>(albums));
+        for (Album album : albums) {
+            album.setUser(this);
+        }
     }
 
     /**
@@ -46,12 +71,13 @@ public class User implements Serializable {
      */
     public void setUsername(String username) {
         this.username = username;
+        albumChanged();
     }
 
     /**
-     * Returns the list of albums of the user.
+     * Returns the albums of the user. The list never changes; later edits replace it.
      *
-     * @return the list of albums of the user
+     * @return an unmodifiable list of albums
      */
     public List<Album> getAlbums() {
         return albums;
@@ -64,7 +90,11 @@ public class User implements Serializable {
      */
     public void addAlbum(Album album) {
         album.setUser(this);
-        albums.add(album);
+        List<Album> updated = new ArrayList<>(albums);
+        updated.add(album);
+        albums = Collections.unmodifiableList(updated);
+        albumChanged();
+        publish(LibraryChange.albumAdded(album));
     }
 
     /**
@@ -73,7 +103,56 @@ public class User implements Serializable {
      * @param album the album to be removed
      */
     public void removeAlbum(Album album) {
-        albums.remove(album);
+        List<Album> updated = new ArrayList<>(albums);
+        if (updated.remove(album)) {
+            albums = Collections.unmodifiableList(updated);
+            albumChanged();
+            publish(LibraryChange.albumRemoved(album));
+        }
+    }
+
+    /**
+     * Sets the listener told about every change to this library.
+     *
+     * @param changeListener the listener, or null to stop reporting changes
+     */
+    public void setChangeListener(LibraryChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Reports a change made to this user or one of its albums.
+     *
+     * @param change what changed
+     */
+    void publish(LibraryChange change) {
+        if (changeListener != null) {
+            changeListener.onLibraryChanged(change);
+        }
+    }
+
+    /**
+     * Returns the library as it is now. Albums that have not changed since the
+     * previous snapshot share their album snapshot with it.
+     *
+     * @return the current library snapshot
+     */
+    public LibrarySnapshot snapshot() {
+        if (snapshot == null) {
+            List<AlbumSnapshot> albumSnapshots = new ArrayList<>(albums.size());
+            for (Album album : albums) {
+                albumSnapshots.add(album.snapshot());
+            }
+            snapshot = new LibrarySnapshot(++version, username, Collections.unmodifiableList(albumSnapshots));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Marks the current snapshot as outdated after the user or one of its albums changed.
+     */
+    void albumChanged() {
+        snapshot = null;
     }
 
     public Album getAlbumByName(String name) {
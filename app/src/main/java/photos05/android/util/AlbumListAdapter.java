@@ -0,0 +1,127 @@
+package photos05.android.util;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import photos05.android.R;
+import photos05.android.model.AlbumSummary;
+
+/**
+ * Album list rows built from album summaries: cover thumbnail, name, photo count and date range.
+ * Summaries are immutable, so diffing a new list rebinds only the rows whose summary changed.
+ */
+public class AlbumListAdapter extends ListAdapter<AlbumSummary, AlbumListAdapter.AlbumViewHolder> {
+
+    public interface OnAlbumClickListener {
+        void onAlbumClick(AlbumSummary album);
+
+        void onAlbumLongClick(AlbumSummary album);
+    }
+
+    private static final DiffUtil.ItemCallback<AlbumSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<AlbumSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull AlbumSummary oldItem, @NonNull AlbumSummary newItem) {
+            // Album names are unique, ignoring case
+            return oldItem.getName().equalsIgnoreCase(newItem.getName());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull AlbumSummary oldItem, @NonNull AlbumSummary newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final ThumbnailLoader thumbnailLoader;
+    private final int coverSize;
+    private final DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM);
+    private OnAlbumClickListener listener;
+
+    public AlbumListAdapter(Context context) {
+        super(DIFF_CALLBACK);
+        this.thumbnailLoader = ThumbnailLoader.getInstance(context);
+        this.coverSize = Math.round(64 * context.getResources().getDisplayMetrics().density);
+    }
+
+    public void setOnAlbumClickListener(OnAlbumClickListener listener) {
+        this.listener = listener;
+    }
+
+    @NonNull
+    @Override
+    public AlbumViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_album, parent, false);
+        AlbumViewHolder holder = new AlbumViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                listener.onAlbumClick(getItem(position));
+            }
+        });
+        view.setOnLongClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                listener.onAlbumLongClick(getItem(position));
+                return true;
+            }
+            return false;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull AlbumViewHolder holder, int position) {
+        AlbumSummary summary = getItem(position);
+        holder.name.setText(summary.getName());
+        holder.details.setText(describe(summary));
+
+        if (summary.getCoverPath() != null) {
+            thumbnailLoader.load(holder.cover, summary.getCoverPath(), coverSize,
+                    summary.getCoverWidth(), summary.getCoverHeight());
+        } else {
+            thumbnailLoader.release(holder.cover);
+            holder.cover.setImageResource(android.R.drawable.ic_menu_gallery);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull AlbumViewHolder holder) {
+        thumbnailLoader.release(holder.cover);
+    }
+
+    // "12 photos, Mar 3, 2021 - Jun 9, 2024"
+    private String describe(AlbumSummary summary) {
+        int count = summary.getPhotoCount();
+        String text = count + (count == 1 ? " photo" : " photos");
+        if (summary.getEarliestDate() != 0) {
+            String earliest = dateFormat.format(new Date(summary.getEarliestDate()));
+            String latest = dateFormat.format(new Date(summary.getLatestDate()));
+            text += ", " + (earliest.equals(latest) ? earliest : earliest + " - " + latest);
+        }
+        return text;
+    }
+
+    public static class AlbumViewHolder extends RecyclerView.ViewHolder {
+        final ImageView cover;
+        final TextView name;
+        final TextView details;
+
+        AlbumViewHolder(@NonNull View view) {
+            super(view);
+            cover = view.findViewById(R.id.albumCover);
+            name = view.findViewById(R.id.albumName);
+            details = view.findViewById(R.id.albumDetails);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package photos05.android.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import photos05.android.model.AlbumSnapshot;
+import photos05.android.model.AlbumSummary;
+import photos05.android.model.LibrarySnapshot;
+
+/**
+ * Keeps the album summaries in album_summaries.dat next to the active profile's library,
+ * so the album list can be shown without reading every photo.
+ * The file is rewritten from the same library snapshot whenever the user is saved.
+ */
+public class AlbumSummaryStore {
+    private static final String TAG = "AlbumSummaryStore";
+    private static final String SUMMARY_FILE = "album_summaries.dat";
+
+    private static List<AlbumSummary> loaded;
+
+    private AlbumSummaryStore() {
+    }
+
+    // Returns the summaries in album order, or null if the library was never summarized.
+    // Reads from disk, so call it off the UI thread
+    public static List<AlbumSummary> load(Context context) {
+        return read(context);
+    }
+
+    // Summarizes a library snapshot taken on the UI thread and writes the file on the io executor
+    public static List<AlbumSummary> build(LibrarySnapshot snapshot, File directory) {
+        update(snapshot);
+        AppExecutors.io().execute(() -> write(snapshot, directory));
+        List<AlbumSummary> summaries = new ArrayList<>();
+        for (AlbumSnapshot album : snapshot.getAlbums()) {
+            summaries.add(album.getSummary());
+        }
+        return Collections.unmodifiableList(summaries);
+    }
+
+    // Forgets the summaries of a profile that is no longer active
+    public static synchronized void unload() {
+        loaded = null;
+    }
+
+    // Makes the summaries of a new library version visible to load() right away
+    public static synchronized void update(LibrarySnapshot snapshot) {
+        List<AlbumSummary> summaries = new ArrayList<>();
+        for (AlbumSnapshot album : snapshot.getAlbums()) {
+            summaries.add(album.getSummary());
+        }
+        loaded = Collections.unmodifiableList(summaries);
+    }
+
+    // Writes the summaries of a library version into its profile folder; called off the UI thread
+    public static void write(LibrarySnapshot snapshot, File directory) {
+        ArrayList<AlbumSummary> summaries = new ArrayList<>();
+        for (AlbumSnapshot album : snapshot.getAlbums()) {
+            summaries.add(album.getSummary());
+        }
+        File file = new File(directory, SUMMARY_FILE);
+        File temp = new File(directory, SUMMARY_FILE + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(temp))) {
+            oos.writeObject(summaries);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write album summaries", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace album summaries file");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized List<AlbumSummary> read(Context context) {
+        if (loaded != null) {
+            return loaded;
+        }
+        File file = new File(UserProfiles.activeDirectory(context), SUMMARY_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            loaded = Collections.unmodifiableList((List<AlbumSummary>) ois.readObject());
+            return loaded;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read album summaries", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package photos05.android.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared background executors so image decoding and file access never run on the UI thread.
+ */
+public class AppExecutors {
+    private static final int DECODE_THREADS = 2;
+    private static final int IMPORT_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService DECODE = Executors.newFixedThreadPool(DECODE_THREADS, new BackgroundThreadFactory("decode"));
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("io"));
+    private static final ExecutorService IMPORT = Executors.newFixedThreadPool(IMPORT_THREADS, new BackgroundThreadFactory("import"));
+    private static final ExecutorService ARCHIVE = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("archive"));
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private AppExecutors() {
+    }
+
+    // Executor for bitmap decoding work
+    public static ExecutorService decode() {
+        return DECODE;
+    }
+
+    // Executor for reading and writing files and image metadata
+    public static ExecutorService io() {
+        return IO;
+    }
+
+    // Executor for the parallel hashing and decoding of bulk imports
+    public static ExecutorService imports() {
+        return IMPORT;
+    }
+
+    // Executor for library exports and restores, which can run for minutes without holding up saves
+    public static ExecutorService archive() {
+        return ARCHIVE;
+    }
+
+    // Posts a task back to the UI thread
+    public static void runOnMain(Runnable task) {
+        MAIN.post(task);
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        BackgroundThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
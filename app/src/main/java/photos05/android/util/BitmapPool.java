@@ -0,0 +1,103 @@
+package photos05.android.util;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of unused mutable bitmaps, bucketed by allocation size, that decodes
+ * can reuse through BitmapFactory.Options.inBitmap instead of allocating.
+ */
+public class BitmapPool {
+    // A pooled bitmap may be at most this many times larger than the request
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private final long maxBytes;
+    private long currentBytes;
+    private long hits;
+    private long misses;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns a pooled bitmap able to hold byteCount bytes, or null if none fits
+    public synchronized Bitmap get(int byteCount) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(byteCount);
+        while (entry != null && entry.getKey() <= (long) byteCount * MAX_SIZE_MULTIPLE) {
+            Bitmap bitmap = entry.getValue().pollFirst();
+            if (entry.getValue().isEmpty()) {
+                buckets.remove(entry.getKey());
+            }
+            if (bitmap != null) {
+                currentBytes -= entry.getKey();
+                if (!bitmap.isRecycled()) {
+                    hits++;
+                    return bitmap;
+                }
+            }
+            entry = buckets.ceilingEntry(byteCount);
+        }
+        misses++;
+        return null;
+    }
+
+    // Offers a bitmap that is no longer displayed or cached anywhere
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > maxBytes) {
+            return;
+        }
+        while (currentBytes + size > maxBytes && !buckets.isEmpty()) {
+            evictLargest();
+        }
+        buckets.computeIfAbsent(size, k -> new ArrayDeque<>()).addLast(bitmap);
+        currentBytes += size;
+    }
+
+    // Drops the largest pooled bitmaps until at most bytes are held
+    public synchronized void trimTo(long bytes) {
+        while (currentBytes > bytes && !buckets.isEmpty()) {
+            evictLargest();
+        }
+    }
+
+    public synchronized void clear() {
+        buckets.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    // Fraction of get() calls that were served from the pool
+    public synchronized float getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0f : (float) hits / total;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private void evictLargest() {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.lastEntry();
+        entry.getValue().pollFirst();
+        currentBytes -= entry.getKey();
+        if (entry.getValue().isEmpty()) {
+            buckets.remove(entry.getKey());
+        }
+    }
+}
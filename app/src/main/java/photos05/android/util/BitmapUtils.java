@@ -0,0 +1,102 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers for decoding images at the size they are displayed instead of full resolution.
+ */
+public class BitmapUtils {
+
+    private BitmapUtils() {
+    }
+
+    // Decodes the image at uri, subsampled so it is no smaller than reqWidth x reqHeight
+    public static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int reqWidth, int reqHeight) throws IOException {
+        return decodeSampled(resolver, uri, reqWidth, reqHeight, Bitmap.Config.ARGB_8888, null);
+    }
+
+    // Same as above in the given pixel format, reusing a pooled bitmap as the decode target when one is large enough
+    public static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int reqWidth, int reqHeight,
+                                       Bitmap.Config config, BitmapPool pool) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream stream = resolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(stream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to read image bounds: " + uri);
+        }
+        return decodeSampled(resolver, uri, options.outWidth, options.outHeight, reqWidth, reqHeight, config, pool);
+    }
+
+    // Decodes an image whose dimensions are already known (e.g. from PhotoMetadata), skipping the bounds pass
+    public static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int width, int height, int reqWidth, int reqHeight,
+                                       Bitmap.Config config, BitmapPool pool) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(width, height, reqWidth, reqHeight);
+        options.inPreferredConfig = config;
+
+        // Hardware bitmaps are immutable and cannot be decoded into a reused buffer
+        if (pool != null && config != Bitmap.Config.HARDWARE) {
+            options.inMutable = true;
+            int sampledWidth = divideRoundingUp(width, options.inSampleSize);
+            int sampledHeight = divideRoundingUp(height, options.inSampleSize);
+            options.inBitmap = pool.get(sampledWidth * sampledHeight * bytesPerPixel(config));
+        }
+
+        try {
+            return decode(resolver, uri, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image, decode into a fresh one
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            return decode(resolver, uri, options);
+        }
+    }
+
+    private static Bitmap decode(ContentResolver resolver, Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream stream = resolver.openInputStream(uri)) {
+            Bitmap bitmap = BitmapFactory.decodeStream(stream, null, options);
+            if (bitmap == null) {
+                throw new IOException("Unable to decode image: " + uri);
+            }
+            return bitmap;
+        }
+    }
+
+    public static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        return 4;
+    }
+
+    private static int divideRoundingUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    // Largest power of two that keeps both dimensions at or above the requested size
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        while ((height / (inSampleSize * 2)) >= reqHeight && (width / (inSampleSize * 2)) >= reqWidth) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,132 @@
+package photos05.android.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * BK-tree over 64-bit hashes using Hamming distance. A lookup within a small
+ * radius only visits the branches whose distance can still be in range,
+ * instead of comparing against every hash.
+ */
+public class BkTree<T> {
+    private static final int MAX_DISTANCE = Long.SIZE;
+
+    public static class Match<T> {
+        public final T item;
+        public final int distance;
+
+        Match(T item, int distance) {
+            this.item = item;
+            this.distance = distance;
+        }
+    }
+
+    private static class Node<T> {
+        final long hash;
+        // Every item with exactly this hash
+        final List<T> items = new ArrayList<>(1);
+        // children[d] holds the subtree at Hamming distance d from this node
+        Node<T>[] children;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+    }
+
+    private Node<T> root;
+    private int size;
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    public void add(long hash, T item) {
+        if (root == null) {
+            root = new Node<>(hash);
+            root.items.add(item);
+            size++;
+            return;
+        }
+        Node<T> node = root;
+        while (true) {
+            int d = distance(hash, node.hash);
+            if (d == 0) {
+                node.items.add(item);
+                size++;
+                return;
+            }
+            if (node.children == null) {
+                node.children = newChildren();
+            }
+            Node<T> child = node.children[d];
+            if (child == null) {
+                child = new Node<>(hash);
+                child.items.add(item);
+                node.children[d] = child;
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    // Removes the item; its node stays in place so the tree keeps its shape
+    public boolean remove(long hash, T item) {
+        Node<T> node = root;
+        while (node != null) {
+            int d = distance(hash, node.hash);
+            if (d == 0) {
+                boolean removed = node.items.remove(item);
+                if (removed) {
+                    size--;
+                }
+                return removed;
+            }
+            node = node.children != null ? node.children[d] : null;
+        }
+        return false;
+    }
+
+    // All items within maxDistance of hash, closest first
+    public List<Match<T>> search(long hash, int maxDistance) {
+        List<Match<T>> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<T> node = stack.pop();
+            int d = distance(hash, node.hash);
+            if (d <= maxDistance) {
+                for (T item : node.items) {
+                    matches.add(new Match<>(item, d));
+                }
+            }
+            if (node.children == null) {
+                continue;
+            }
+            // Triangle inequality: only children at distance d +/- maxDistance can match
+            int from = Math.max(1, d - maxDistance);
+            int to = Math.min(MAX_DISTANCE, d + maxDistance);
+            for (int i = from; i <= to; i++) {
+                if (node.children[i] != null) {
+                    stack.push(node.children[i]);
+                }
+            }
+        }
+        matches.sort((a, b) -> Integer.compare(a.distance, b.distance));
+        return matches;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newChildren() {
+        return (Node<T>[]) new Node[MAX_DISTANCE + 1];
+    }
+}
@@ -0,0 +1,123 @@
+package photos05.android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.User;
+
+/**
+ * Library-wide index over colour signatures. For each palette colour it keeps
+ * photos ordered by how much of the photo that colour covers, so the nearest
+ * signatures to a single-colour query are read off the front of one list.
+ * Used from the UI thread only.
+ */
+public class ColorIndex {
+    // A photo must be at least this share of a colour (out of 255) to match it
+    public static final int MIN_SHARE = 25;
+
+    // Entry plus its tree node
+    private static final int ENTRY_BYTES = 64;
+
+    private static ColorIndex instance;
+
+    private static class Entry implements Comparable<Entry> {
+        final int share;
+        final Photo photo;
+
+        Entry(int share, Photo photo) {
+            this.share = share;
+            this.photo = photo;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (share != other.share) {
+                return Integer.compare(other.share, share);
+            }
+            return Long.compare(photo.getId(), other.photo.getId());
+        }
+    }
+
+    private final User user;
+    private final List<TreeSet<Entry>> byColor = new ArrayList<>();
+
+    public static ColorIndex get(User user) {
+        if (instance == null || instance.user != user) {
+            instance = new ColorIndex(user);
+        }
+        return instance;
+    }
+
+    // Drops the index of a profile that is no longer active
+    public static void unload() {
+        instance = null;
+    }
+
+    // The index if it is built for user, otherwise null; it reads the library when next built
+    static ColorIndex ifLoaded(User user) {
+        return instance != null && instance.user == user ? instance : null;
+    }
+
+    // Rough heap size of the built index, or 0 if none is built
+    static long estimateBytes() {
+        return instance != null ? instance.entryCount() * ENTRY_BYTES : 0;
+    }
+
+    private ColorIndex(User user) {
+        this.user = user;
+        for (int i = 0; i < ColorSignature.size(); i++) {
+            byColor.add(new TreeSet<>());
+        }
+        for (Album album : user.getAlbums()) {
+            for (Photo photo : album.getPhotos()) {
+                add(photo);
+            }
+        }
+    }
+
+    public void add(Photo photo) {
+        byte[] signature = photo.getColorSignature();
+        if (signature == null) {
+            return;
+        }
+        for (int i = 0; i < byColor.size(); i++) {
+            int share = ColorSignature.share(signature, i);
+            if (share >= MIN_SHARE) {
+                byColor.get(i).add(new Entry(share, photo));
+            }
+        }
+    }
+
+    public void remove(Photo photo) {
+        byte[] signature = photo.getColorSignature();
+        if (signature == null) {
+            return;
+        }
+        for (int i = 0; i < byColor.size(); i++) {
+            byColor.get(i).remove(new Entry(ColorSignature.share(signature, i), photo));
+        }
+    }
+
+    private long entryCount() {
+        long count = 0;
+        for (TreeSet<Entry> entries : byColor) {
+            count += entries.size();
+        }
+        return count;
+    }
+
+    // Photos where the colour covers the largest share, best match first
+    public List<Photo> search(int colorIndex, int limit) {
+        List<Photo> results = new ArrayList<>();
+        for (Entry entry : byColor.get(colorIndex)) {
+            if (results.size() >= limit) {
+                break;
+            }
+            results.add(entry.photo);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,72 @@
+package photos05.android.util;
+
+import android.graphics.Bitmap;
+
+/**
+ * Compact colour signature of a photo: the share of its pixels closest to
+ * each colour of a small fixed palette, one byte per palette colour.
+ */
+public class ColorSignature {
+    public static final String[] NAMES = {
+            "Red", "Orange", "Yellow", "Green", "Teal", "Blue",
+            "Purple", "Pink", "Brown", "Black", "Gray", "White"
+    };
+    private static final int[][] PALETTE = {
+            {220, 40, 40}, {245, 140, 30}, {240, 220, 50}, {60, 170, 60}, {40, 170, 170}, {40, 90, 210},
+            {130, 60, 180}, {240, 130, 180}, {130, 85, 50}, {20, 20, 20}, {128, 128, 128}, {240, 240, 240}
+    };
+    // Shares are stored as 0..255
+    public static final int MAX_SHARE = 255;
+
+    private ColorSignature() {
+    }
+
+    public static int size() {
+        return PALETTE.length;
+    }
+
+    // Computes the signature of an already downscaled bitmap
+    public static byte[] compute(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        return compute(pixels);
+    }
+
+    static byte[] compute(int[] pixels) {
+        int[] counts = new int[PALETTE.length];
+        for (int pixel : pixels) {
+            counts[nearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF)]++;
+        }
+        byte[] signature = new byte[PALETTE.length];
+        if (pixels.length == 0) {
+            return signature;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            signature[i] = (byte) Math.round((float) counts[i] * MAX_SHARE / pixels.length);
+        }
+        return signature;
+    }
+
+    // Share of the photo taken by palette colour index, 0..255
+    public static int share(byte[] signature, int colorIndex) {
+        return signature[colorIndex] & 0xFF;
+    }
+
+    private static int nearest(int r, int g, int b) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < PALETTE.length; i++) {
+            int dr = r - PALETTE[i][0];
+            int dg = g - PALETTE[i][1];
+            int db = b - PALETTE[i][2];
+            int distance = dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -1,35 +1,179 @@
 package photos05.android.util;
 
 import android.content.Context;
+import android.util.Log;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
+import photos05.android.model.Album;
+import photos05.android.model.LibraryChange;
+import photos05.android.model.LibrarySnapshot;
 import photos05.android.model.User;
 
 public class DataManager {
-    public static User loadUser(Context context) {
+    private static final String TAG = "DataManager";
+    private static final String USER_FILE = "user_data.dat";
+
+    // Every screen and background task shares the same loaded user, the active profile's
+    private static User loadedUser;
+    private static File loadedDirectory;
+    // Newest snapshot waiting to be written, where it goes, and whether a write task is already queued
+    private static LibrarySnapshot pendingSnapshot;
+    private static File pendingDirectory;
+    private static boolean writeScheduled;
+
+    // Loads the active profile's library the first time it is needed
+    public static synchronized User loadUser(Context context) {
+        if (loadedUser != null) {
+            return loadedUser;
+        }
+        String profile = UserProfiles.getActive(context);
+        loadedDirectory = UserProfiles.directory(context, profile);
         try {
-            File file = new File(context.getFilesDir(), "user_data.dat");
+            File file = new File(loadedDirectory, USER_FILE);
             ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file));
-            return (User) ois.readObject();
+            loadedUser = (User) ois.readObject();
         } catch (Exception e) {
             e.printStackTrace();
-            return new User("default");
+            loadedUser = new User(profile);
         }
+        // Screens follow the library through the change feed instead of reloading it
+        loadedUser.setChangeListener(LibraryChangeFeed.get());
+        // Caches built from the library give memory back when the system asks
+        MemoryGovernor.install(context);
+        return loadedUser;
     }
 
+    // Takes a snapshot of the library and writes it on the io executor; saves made
+    // while a write is still queued are folded into it, so only the newest version is written
     public static void saveUser(User user, Context context) {
+        LibrarySnapshot snapshot;
+        synchronized (DataManager.class) {
+            if (user != loadedUser) {
+                // Work that finished after a profile switch must not land in the new profile
+                Log.w(TAG, "Ignoring save of a profile that is no longer active");
+                return;
+            }
+            snapshot = user.snapshot();
+            // The album list reads its own small file instead of the whole library
+            AlbumSummaryStore.update(snapshot);
+            pendingSnapshot = snapshot;
+            pendingDirectory = loadedDirectory;
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        AppExecutors.io().execute(DataManager::writePending);
+    }
+
+    // Makes another profile active. The previous profile's library, summaries, search indexes,
+    // import queue and cached thumbnails are let go; the new one loads when first needed
+    public static void switchUser(Context context, String profile) {
+        Context appContext = context.getApplicationContext();
+        User previous;
+        LibrarySnapshot unsaved;
+        File unsavedDirectory;
+        synchronized (DataManager.class) {
+            previous = loadedUser;
+            loadedUser = null;
+            loadedDirectory = null;
+            UserProfiles.setActive(appContext, profile);
+            // The queued write still goes to the previous profile, even if the new one saves first
+            unsaved = pendingSnapshot;
+            unsavedDirectory = pendingDirectory;
+            pendingSnapshot = null;
+            pendingDirectory = null;
+        }
+        if (unsaved != null) {
+            AppExecutors.io().execute(() -> write(unsaved, unsavedDirectory));
+        }
+        if (previous != null) {
+            previous.setChangeListener(null);
+        }
+        ImportQueue.unload();
+        AlbumSummaryStore.unload();
+        SimilarityIndex.unload();
+        ColorIndex.unload();
+        DateIndex.unload();
+        TagIndex.unload();
+        ReachabilitySweeper.unload();
+        ThumbnailLoader.getInstance(appContext).clearMemory();
+        // Open screens drop what they show and read the new profile
+        LibraryChangeFeed.get().onLibraryChanged(LibraryChange.resync());
+    }
+
+    // Sorted orders and content hash lookups of the loaded albums are given up album by album
+    static void registerWith(MemoryGovernor governor) {
+        governor.register("Album sort orders", MemoryGovernor.PRIORITY_SORTED, new MemoryGovernor.Cache() {
+            @Override
+            public long getFootprint() {
+                User user = loadedUser();
+                long bytes = 0;
+                if (user != null) {
+                    for (Album album : user.getAlbums()) {
+                        bytes += album.estimateDerivedBytes();
+                    }
+                }
+                return bytes;
+            }
+
+            @Override
+            public void trimTo(long bytes) {
+                User user = loadedUser();
+                if (user == null) {
+                    return;
+                }
+                long footprint = getFootprint();
+                for (Album album : user.getAlbums()) {
+                    if (footprint <= bytes) {
+                        break;
+                    }
+                    footprint -= album.estimateDerivedBytes();
+                    album.releaseDerived();
+                }
+            }
+        });
+    }
+
+    private static synchronized User loadedUser() {
+        return loadedUser;
+    }
+
+    private static void writePending() {
+        LibrarySnapshot snapshot;
+        File directory;
+        synchronized (DataManager.class) {
+            snapshot = pendingSnapshot;
+            directory = pendingDirectory;
+            pendingSnapshot = null;
+            pendingDirectory = null;
+            writeScheduled = false;
+        }
+        if (snapshot != null) {
+            write(snapshot, directory);
+        }
+    }
+
+    private static void write(LibrarySnapshot snapshot, File directory) {
         try {
-            File file = new File(context.getFilesDir(), "user_data.dat");
-            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file));
-            oos.writeObject(user);
+            // Write to a temporary file first so a crash never leaves a half-written library
+            File file = new File(directory, USER_FILE);
+            File temp = new File(directory, USER_FILE + ".tmp");
+            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(temp));
+            oos.writeObject(snapshot.toUser());
             oos.close();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to replace " + file);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+        AlbumSummaryStore.write(snapshot, directory);
     }
 }
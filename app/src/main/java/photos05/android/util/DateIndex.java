@@ -0,0 +1,111 @@
+package photos05.android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.PhotoMetadata;
+import photos05.android.model.User;
+
+/**
+ * Library-wide index of photos ordered by capture time. A date range is answered by
+ * searching the tree for its two ends and reading the photos in between, so a query
+ * costs O(log n + k) for k results. Photos without a known date are not indexed.
+ * Used from the UI thread only.
+ */
+public class DateIndex {
+    // Entry plus its tree node
+    private static final int ENTRY_BYTES = 72;
+
+    private static DateIndex instance;
+
+    private static class Entry implements Comparable<Entry> {
+        final long date;
+        final long id;
+        final Photo photo;
+
+        Entry(long date, long id, Photo photo) {
+            this.date = date;
+            this.id = id;
+            this.photo = photo;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (date != other.date) {
+                return Long.compare(date, other.date);
+            }
+            return Long.compare(id, other.id);
+        }
+    }
+
+    private final User user;
+    private final TreeSet<Entry> byDate = new TreeSet<>();
+
+    public static DateIndex get(User user) {
+        if (instance == null || instance.user != user) {
+            instance = new DateIndex(user);
+        }
+        return instance;
+    }
+
+    // Drops the index of a profile that is no longer active
+    public static void unload() {
+        instance = null;
+    }
+
+    // The index if it is built for user, otherwise null; it reads the library when next built
+    static DateIndex ifLoaded(User user) {
+        return instance != null && instance.user == user ? instance : null;
+    }
+
+    // Rough heap size of the built index, or 0 if none is built
+    static long estimateBytes() {
+        return instance != null ? (long) instance.byDate.size() * ENTRY_BYTES : 0;
+    }
+
+    private DateIndex(User user) {
+        this.user = user;
+        for (Album album : user.getAlbums()) {
+            for (Photo photo : album.getPhotos()) {
+                add(photo);
+            }
+        }
+    }
+
+    public void add(Photo photo) {
+        long date = dateOf(photo);
+        if (date != 0) {
+            byDate.add(new Entry(date, photo.getId(), photo));
+        }
+    }
+
+    public void remove(Photo photo) {
+        long date = dateOf(photo);
+        if (date != 0) {
+            byDate.remove(new Entry(date, photo.getId(), photo));
+        }
+    }
+
+    // Photos taken from start to end inclusive, in milliseconds since the epoch, oldest first
+    public List<Photo> between(long start, long end) {
+        List<Photo> results = new ArrayList<>();
+        if (start > end) {
+            return results;
+        }
+        NavigableSet<Entry> range = byDate.subSet(
+                new Entry(start, Long.MIN_VALUE, null), true, new Entry(end, Long.MAX_VALUE, null), true);
+        for (Entry entry : range) {
+            results.add(entry.photo);
+        }
+        return results;
+    }
+
+    private static long dateOf(Photo photo) {
+        PhotoMetadata metadata = photo.getMetadata();
+        return metadata != null ? metadata.getDateTaken() : 0;
+    }
+}
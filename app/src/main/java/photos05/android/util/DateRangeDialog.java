@@ -0,0 +1,87 @@
+package photos05.android.util;
+
+import android.app.AlertDialog;
+import android.app.DatePickerDialog;
+import android.content.Context;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+public class DateRangeDialog {
+    public interface OnRangePickedListener {
+        // start and end are inclusive, in milliseconds since the epoch
+        void onRangePicked(long start, long end, String label);
+    }
+
+    private static final String[] OPTIONS = { "A Day", "A Month", "A Year", "Between Two Dates" };
+
+    // Asks for a day, a month, a year or two dates and reports the covered range
+    public static void show(Context context, OnRangePickedListener listener) {
+        new AlertDialog.Builder(context)
+                .setTitle("Photos taken in")
+                .setItems(OPTIONS, (dialog, which) -> {
+                    switch (which) {
+                        case 0:
+                            pickDate(context, "Day", day -> listener.onRangePicked(day.getTimeInMillis(),
+                                    endOf(day, Calendar.DAY_OF_MONTH), format(day, DateFormat.getDateInstance(DateFormat.MEDIUM))));
+                            break;
+                        case 1:
+                            pickDate(context, "Any day of the month", day -> {
+                                day.set(Calendar.DAY_OF_MONTH, 1);
+                                listener.onRangePicked(day.getTimeInMillis(), endOf(day, Calendar.MONTH),
+                                        format(day, new SimpleDateFormat("MMMM yyyy", Locale.getDefault())));
+                            });
+                            break;
+                        case 2:
+                            pickDate(context, "Any day of the year", day -> {
+                                day.set(Calendar.DAY_OF_YEAR, 1);
+                                listener.onRangePicked(day.getTimeInMillis(), endOf(day, Calendar.YEAR),
+                                        String.valueOf(day.get(Calendar.YEAR)));
+                            });
+                            break;
+                        default:
+                            pickDate(context, "From", from -> pickDate(context, "To", to -> {
+                                Calendar first = from.before(to) ? from : to;
+                                Calendar last = from.before(to) ? to : from;
+                                DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM);
+                                listener.onRangePicked(first.getTimeInMillis(), endOf(last, Calendar.DAY_OF_MONTH),
+                                        format(first, dateFormat) + " - " + format(last, dateFormat));
+                            }));
+                            break;
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private interface OnDayPickedListener {
+        // day is set to the start of the picked day
+        void onDayPicked(Calendar day);
+    }
+
+    private static void pickDate(Context context, String title, OnDayPickedListener listener) {
+        Calendar today = Calendar.getInstance();
+        DatePickerDialog picker = new DatePickerDialog(context, (view, year, month, dayOfMonth) -> {
+            Calendar day = Calendar.getInstance();
+            day.clear();
+            day.set(year, month, dayOfMonth);
+            listener.onDayPicked(day);
+        }, today.get(Calendar.YEAR), today.get(Calendar.MONTH), today.get(Calendar.DAY_OF_MONTH));
+        picker.setTitle(title);
+        picker.show();
+    }
+
+    // The last millisecond of the day, month or year starting at start
+    private static long endOf(Calendar start, int field) {
+        Calendar end = (Calendar) start.clone();
+        end.add(field, 1);
+        return end.getTimeInMillis() - 1;
+    }
+
+    private static String format(Calendar day, DateFormat dateFormat) {
+        return dateFormat.format(new Date(day.getTimeInMillis()));
+    }
+}
@@ -0,0 +1,157 @@
+package photos05.android.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Extracts the small JPEG thumbnail that cameras embed in the EXIF header.
+ * Only the markers before the image data and the APP1 segment are read,
+ * never the compressed image itself.
+ */
+public class ExifThumbnailReader {
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+    private static final int IFD_ENTRY_SIZE = 12;
+
+    private ExifThumbnailReader() {
+    }
+
+    // Returns the embedded JPEG thumbnail bytes, or null if the stream has none
+    public static byte[] readThumbnail(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        try {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            while (true) {
+                int prefix = in.readUnsignedByte();
+                if (prefix != 0xFF) {
+                    return null;
+                }
+                int marker = in.readUnsignedByte();
+                while (marker == 0xFF) {
+                    // Fill bytes before a marker
+                    marker = in.readUnsignedByte();
+                }
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    // Image data starts here; the EXIF header always comes before it
+                    return null;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return null;
+                }
+                if (marker == MARKER_APP1) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    byte[] thumbnail = parseApp1(segment);
+                    if (thumbnail != null) {
+                        return thumbnail;
+                    }
+                } else {
+                    skipFully(in, length);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // Parses an APP1 segment: "Exif\0\0" followed by a TIFF structure whose second IFD describes the thumbnail
+    static byte[] parseApp1(byte[] segment) {
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i'
+                || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+            return null;
+        }
+        int tiff = 6;
+        boolean littleEndian;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return null;
+        }
+        if (readShort(segment, tiff + 2, littleEndian) != 42) {
+            return null;
+        }
+
+        // Skip IFD0 (main image) to reach IFD1 (thumbnail)
+        long ifd0 = readInt(segment, tiff + 4, littleEndian);
+        int ifd0Count = readShort(segment, tiff + ifd0, littleEndian);
+        if (ifd0Count < 0) {
+            return null;
+        }
+        long ifd1 = readInt(segment, tiff + ifd0 + 2 + (long) ifd0Count * IFD_ENTRY_SIZE, littleEndian);
+        if (ifd1 <= 0) {
+            return null;
+        }
+        int ifd1Count = readShort(segment, tiff + ifd1, littleEndian);
+        if (ifd1Count < 0) {
+            return null;
+        }
+
+        long offset = -1;
+        long length = -1;
+        for (int i = 0; i < ifd1Count; i++) {
+            long entry = tiff + ifd1 + 2 + (long) i * IFD_ENTRY_SIZE;
+            int tag = readShort(segment, entry, littleEndian);
+            if (tag == TAG_JPEG_INTERCHANGE_FORMAT) {
+                offset = readInt(segment, entry + 8, littleEndian);
+            } else if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
+                length = readInt(segment, entry + 8, littleEndian);
+            }
+        }
+        if (offset <= 0 || length <= 0 || tiff + offset + length > segment.length) {
+            return null;
+        }
+        byte[] thumbnail = new byte[(int) length];
+        System.arraycopy(segment, (int) (tiff + offset), thumbnail, 0, (int) length);
+        return thumbnail;
+    }
+
+    // Unsigned 16-bit value, or -1 if out of bounds
+    private static int readShort(byte[] data, long position, boolean littleEndian) {
+        if (position < 0 || position + 2 > data.length) {
+            return -1;
+        }
+        int p = (int) position;
+        int b0 = data[p] & 0xFF;
+        int b1 = data[p + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    // Unsigned 32-bit value, or -1 if out of bounds
+    private static long readInt(byte[] data, long position, boolean littleEndian) {
+        if (position < 0 || position + 4 > data.length) {
+            return -1;
+        }
+        int p = (int) position;
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = data[littleEndian ? p + 3 - i : p + i] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                // skipBytes may stop early; fall back to reading
+                in.readUnsignedByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
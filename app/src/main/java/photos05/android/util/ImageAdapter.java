@@ -1,55 +0,0 @@
-package photos05.android.util;
-
-import android.content.Context;
-import android.net.Uri;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.BaseAdapter;
-import android.widget.ImageView;
-
-import java.util.List;
-
-import photos05.android.model.Photo;
-
-public class ImageAdapter extends BaseAdapter {
-    private final Context context;
-    private final List<Photo> photos;
-
-    public ImageAdapter(Context context, List<Photo> photos) {
-        this.context = context;
-        this.photos = photos;
-    }
-
-    @Override
-    public int getCount() {
-        return photos.size();
-    }
-
-    @Override
-    public Object getItem(int position) {
-        return photos.get(position);
-    }
-
-    @Override
-    public long getItemId(int position) {
-        return position;
-    }
-
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        ImageView imageView;
-        if (convertView == null) {
-            imageView = new ImageView(context);
-            imageView.setLayoutParams(new ViewGroup.LayoutParams(300, 300));
-            imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-            imageView.setPadding(8, 8, 8, 8);
-        } else {
-            imageView = (ImageView) convertView;
-        }
-
-        String path = photos.get(position).getFilePath();
-        imageView.setImageURI(Uri.parse(path));
-
-        return imageView;
-    }
-}
@@ -0,0 +1,517 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.PhotoMetadata;
+import photos05.android.model.User;
+
+/**
+ * Queue of photos waiting to be imported into the active profile, kept in its import_queue.dat
+ * so that imports survive activity recreation and resume after the process is killed.
+ * At most MAX_IN_FLIGHT images are read at once by the import workers, which persist
+ * the URI permission, validate, hash and decode the grid thumbnail; the thumbnail also
+ * feeds the perceptual hash and colour signature. Finished images are committed on the
+ * UI thread in queue order, one batch at a time: content duplicates are dropped, the rest
+ * are added and indexed, the user is saved once, and only then are the jobs removed from
+ * the queue file, so a crash never loses or doubles a photo.
+ * Progress is reported to whichever screen listens for the target album.
+ * Switching profiles unloads the queue; its jobs resume when the profile is active again.
+ */
+public class ImportQueue {
+    private static final String TAG = "ImportQueue";
+    private static final String QUEUE_FILE = "import_queue.dat";
+    private static final int BATCH_SIZE = 200;
+    private static final int MAX_IN_FLIGHT = 8;
+
+    private static ImportQueue instance;
+
+    public interface Listener {
+        // Called after every finished image
+        void onProgress(Progress progress);
+
+        // Called once every queued image of the album has been committed
+        void onFinished(Progress progress);
+    }
+
+    // Counts for one album since its queue was last empty
+    public static class Progress {
+        public final String albumName;
+        public int total;
+        public int processed;
+        public int imported;
+        public int duplicates;
+        public int failed;
+
+        Progress(String albumName) {
+            this.albumName = albumName;
+        }
+
+        public int getCommitted() {
+            return imported + duplicates + failed;
+        }
+    }
+
+    // One queued image; only the target and the source are written to the queue file
+    private static class Job implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        String albumName;
+        final String uri;
+        final boolean persistPermission;
+        final int thumbnailSize;
+        transient boolean started;
+        transient Outcome outcome;
+
+        Job(String albumName, String uri, boolean persistPermission, int thumbnailSize) {
+            this.albumName = albumName;
+            this.uri = uri;
+            this.persistPermission = persistPermission;
+            this.thumbnailSize = thumbnailSize;
+        }
+    }
+
+    // What a worker produced for one image; photo is null if the image could not be read
+    private static class Outcome {
+        final Photo photo;
+        final Bitmap thumbnail;
+
+        Outcome(Photo photo, Bitmap thumbnail) {
+            this.photo = photo;
+            this.thumbnail = thumbnail;
+        }
+    }
+
+    private static class Registration {
+        final String albumName;
+        final Listener listener;
+
+        Registration(String albumName, Listener listener) {
+            this.albumName = albumName;
+            this.listener = listener;
+        }
+    }
+
+    private final Context appContext;
+    private final File directory;
+    private final ContentResolver resolver;
+    private final ThumbnailLoader thumbnailLoader;
+    // Queued jobs in order; finished jobs stay at the front until their batch is committed
+    private final List<Job> jobs = new ArrayList<>();
+    private final Map<String, Progress> progressByAlbum = new HashMap<>();
+    private final List<Registration> registrations = new ArrayList<>();
+    private int inFlight;
+    // Set once another profile becomes active; late results are then dropped
+    private boolean closed;
+
+    public static synchronized ImportQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImportQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Stops committing into the previous profile; unfinished jobs stay in its queue file
+    public static synchronized void unload() {
+        if (instance != null) {
+            instance.closed = true;
+            instance = null;
+        }
+    }
+
+    private ImportQueue(Context context) {
+        this.appContext = context;
+        this.directory = UserProfiles.activeDirectory(context);
+        this.resolver = context.getContentResolver();
+        this.thumbnailLoader = ThumbnailLoader.getInstance(context);
+        // Pick up whatever was still queued when the process last died
+        for (Job job : readQueue()) {
+            addJob(job);
+        }
+        dispatch();
+    }
+
+    // Queues the picked documents; each one gets its own persisted read permission
+    public void enqueue(String albumName, List<Uri> uris, int thumbnailSize) {
+        enqueue(albumName, uris, true, thumbnailSize);
+    }
+
+    // Queues every image below a picked document tree; the tree permission covers all of them
+    public void enqueueTree(String albumName, Uri treeUri, int thumbnailSize) {
+        try {
+            resolver.takePersistableUriPermission(treeUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.e(TAG, "URI permission error", e);
+        }
+        AppExecutors.io().execute(() -> {
+            List<Uri> images = listImages(resolver, treeUri);
+            AppExecutors.runOnMain(() -> enqueue(albumName, images, false, thumbnailSize));
+        });
+    }
+
+    // Receives progress for albumName; a listener joining mid-import gets the current counts at once
+    public void addListener(String albumName, Listener listener) {
+        registrations.add(new Registration(albumName, listener));
+        Progress progress = getProgress(albumName);
+        if (progress != null) {
+            listener.onProgress(progress);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        registrations.removeIf(registration -> registration.listener == listener);
+    }
+
+    // Returns the counts of the album's running import, or null if nothing is queued for it
+    public Progress getProgress(String albumName) {
+        return progressByAlbum.get(key(albumName));
+    }
+
+    // Drops the album's images that have not been started; finished ones are still committed
+    public void cancel(String albumName) {
+        Progress progress = getProgress(albumName);
+        if (progress == null) {
+            return;
+        }
+        Iterator<Job> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            Job job = iterator.next();
+            if (!job.started && job.albumName.equalsIgnoreCase(albumName)) {
+                iterator.remove();
+                progress.total--;
+            }
+        }
+        writeQueue();
+        commitFinished(true);
+        finishCompletedAlbums();
+    }
+
+    // Keeps queued jobs pointing at an album after it is renamed
+    public void albumRenamed(String oldName, String newName) {
+        boolean changed = false;
+        for (Job job : jobs) {
+            if (job.albumName.equalsIgnoreCase(oldName)) {
+                job.albumName = newName;
+                changed = true;
+            }
+        }
+        Progress progress = progressByAlbum.remove(key(oldName));
+        if (progress != null) {
+            Progress renamed = new Progress(newName);
+            renamed.total = progress.total;
+            renamed.processed = progress.processed;
+            renamed.imported = progress.imported;
+            renamed.duplicates = progress.duplicates;
+            renamed.failed = progress.failed;
+            progressByAlbum.put(key(newName), renamed);
+        }
+        if (changed) {
+            writeQueue();
+        }
+    }
+
+    private void enqueue(String albumName, List<Uri> uris, boolean persistPermission, int thumbnailSize) {
+        if (closed) {
+            return;
+        }
+        // Skip URIs already in the album or already waiting for it
+        Set<String> known = new HashSet<>();
+        Album album = DataManager.loadUser(appContext).getAlbumByName(albumName);
+        if (album != null) {
+            for (Photo photo : album.getPhotos()) {
+                known.add(photo.getFilePath());
+            }
+        }
+        for (Job job : jobs) {
+            if (job.albumName.equalsIgnoreCase(albumName)) {
+                known.add(job.uri);
+            }
+        }
+
+        int added = 0;
+        for (Uri uri : uris) {
+            if (known.add(uri.toString())) {
+                addJob(new Job(albumName, uri.toString(), persistPermission, thumbnailSize));
+                added++;
+            }
+        }
+        if (added == 0) {
+            // Nothing new to import; report it unless the album is already importing
+            if (getProgress(albumName) == null) {
+                Progress progress = new Progress(albumName);
+                progress.total = uris.size();
+                progress.duplicates = uris.size();
+                notifyFinished(progress);
+            }
+            return;
+        }
+        writeQueue();
+        dispatch();
+    }
+
+    private void addJob(Job job) {
+        jobs.add(job);
+        String key = key(job.albumName);
+        Progress progress = progressByAlbum.get(key);
+        if (progress == null) {
+            progress = new Progress(job.albumName);
+            progressByAlbum.put(key, progress);
+        }
+        progress.total++;
+    }
+
+    // Starts queued jobs in order until MAX_IN_FLIGHT are running
+    private void dispatch() {
+        Bitmap.Config thumbnailConfig = thumbnailLoader.getQuality().getConfig();
+        for (Job job : jobs) {
+            if (inFlight >= MAX_IN_FLIGHT) {
+                return;
+            }
+            if (job.started) {
+                continue;
+            }
+            job.started = true;
+            inFlight++;
+            AppExecutors.imports().execute(() -> {
+                Outcome outcome = process(job, thumbnailConfig);
+                AppExecutors.runOnMain(() -> complete(job, outcome));
+            });
+        }
+    }
+
+    // Runs on an import worker
+    private Outcome process(Job job, Bitmap.Config thumbnailConfig) {
+        Uri uri = Uri.parse(job.uri);
+        if (job.persistPermission) {
+            try {
+                resolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException e) {
+                // Already persisted before a restart, or the grant has expired; reading below decides
+                Log.w(TAG, "URI permission error for " + job.uri);
+            }
+        }
+        try {
+            PhotoMetadata metadata = MetadataExtractor.extract(resolver, uri);
+            if (metadata == null) {
+                throw new IOException("Not a readable image");
+            }
+            Photo photo = new Photo(job.uri);
+            photo.setMetadata(metadata);
+            photo.setContentHash(ContentHasher.hash(resolver, uri));
+
+            // One decode serves as the grid thumbnail and as the input of the visual fingerprints
+            Bitmap.Config decodeConfig = thumbnailConfig == Bitmap.Config.HARDWARE ? Bitmap.Config.ARGB_8888 : thumbnailConfig;
+            Bitmap thumbnail = BitmapUtils.decodeSampled(resolver, uri, metadata.getWidth(), metadata.getHeight(),
+                    job.thumbnailSize, job.thumbnailSize, decodeConfig, null);
+            PhotoAnalysis analysis = PhotoAnalysis.analyze(thumbnail);
+            photo.setPerceptualHash(analysis.perceptualHash);
+            photo.setColorSignature(analysis.colorSignature);
+            if (thumbnailConfig == Bitmap.Config.HARDWARE) {
+                Bitmap hardware = thumbnail.copy(Bitmap.Config.HARDWARE, false);
+                thumbnail.recycle();
+                thumbnail = hardware;
+            }
+            return new Outcome(photo, thumbnail);
+        } catch (Exception e) {
+            Log.e(TAG, "Photo creation failed for path: " + job.uri, e);
+            return new Outcome(null, null);
+        }
+    }
+
+    private void complete(Job job, Outcome outcome) {
+        if (closed) {
+            if (outcome.thumbnail != null) {
+                outcome.thumbnail.recycle();
+            }
+            return;
+        }
+        inFlight--;
+        job.outcome = outcome;
+        Progress progress = getProgress(job.albumName);
+        if (progress != null) {
+            progress.processed++;
+            for (Registration registration : listenersFor(job.albumName)) {
+                registration.listener.onProgress(progress);
+            }
+        }
+        commitFinished(false);
+        dispatch();
+    }
+
+    // Commits the finished jobs at the front of the queue once a batch is full or nothing else is coming
+    private void commitFinished(boolean force) {
+        int finished = 0;
+        while (finished < jobs.size() && jobs.get(finished).outcome != null) {
+            finished++;
+        }
+        if (finished == 0 || (finished < BATCH_SIZE && finished < jobs.size() && !force)) {
+            return;
+        }
+
+        User user = DataManager.loadUser(appContext);
+        List<Job> batch = new ArrayList<>(jobs.subList(0, finished));
+        Map<String, List<Photo>> addedByAlbum = new HashMap<>();
+        Set<String> batchHashes = new HashSet<>();
+        for (Job job : batch) {
+            Progress progress = getProgress(job.albumName);
+            Outcome outcome = job.outcome;
+            Album album = user.getAlbumByName(job.albumName);
+            if (outcome.photo == null || album == null) {
+                // Unreadable image, or the album was deleted while queued
+                progress.failed++;
+                continue;
+            }
+            // Same bytes already in the album, possibly under another URI, or earlier in this batch
+            String hash = outcome.photo.getContentHash();
+            if (album.findByContentHash(hash) != null || !batchHashes.add(key(job.albumName) + "#" + hash)) {
+                progress.duplicates++;
+                outcome.thumbnail.recycle();
+                continue;
+            }
+            thumbnailLoader.offer(job.uri, job.thumbnailSize, outcome.thumbnail);
+            progress.imported++;
+            List<Photo> added = addedByAlbum.get(key(job.albumName));
+            if (added == null) {
+                added = new ArrayList<>();
+                addedByAlbum.put(key(job.albumName), added);
+            }
+            added.add(outcome.photo);
+        }
+        // One copy of each album's photo list per batch
+        for (Map.Entry<String, List<Photo>> entry : addedByAlbum.entrySet()) {
+            user.getAlbumByName(entry.getKey()).addPhotos(entry.getValue());
+            for (Photo photo : entry.getValue()) {
+                LibraryIndexes.photoAdded(user, photo);
+            }
+        }
+
+        // Save the photos before forgetting the jobs, so a crash in between only repeats work
+        if (!addedByAlbum.isEmpty()) {
+            DataManager.saveUser(user, appContext);
+        }
+        jobs.subList(0, finished).clear();
+        // Screens showing the albums hear about the new photos through the library change feed
+        writeQueue();
+        finishCompletedAlbums();
+    }
+
+    private void finishCompletedAlbums() {
+        for (Progress progress : new ArrayList<>(progressByAlbum.values())) {
+            if (progress.getCommitted() >= progress.total) {
+                progressByAlbum.remove(key(progress.albumName));
+                notifyFinished(progress);
+            }
+        }
+    }
+
+    private void notifyFinished(Progress progress) {
+        for (Registration registration : listenersFor(progress.albumName)) {
+            registration.listener.onFinished(progress);
+        }
+    }
+
+    private List<Registration> listenersFor(String albumName) {
+        List<Registration> matching = new ArrayList<>();
+        for (Registration registration : registrations) {
+            if (registration.albumName.equalsIgnoreCase(albumName)) {
+                matching.add(registration);
+            }
+        }
+        return matching;
+    }
+
+    // Album names are case-insensitive, like User.getAlbumByName
+    private static String key(String albumName) {
+        return albumName.toLowerCase(Locale.ROOT);
+    }
+
+    // Writes the unfinished jobs on the io executor, replacing the file in one rename
+    private void writeQueue() {
+        List<Job> snapshot = new ArrayList<>(jobs);
+        AppExecutors.io().execute(() -> {
+            File file = new File(directory, QUEUE_FILE);
+            if (snapshot.isEmpty()) {
+                file.delete();
+                return;
+            }
+            File temp = new File(directory, QUEUE_FILE + ".tmp");
+            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(temp))) {
+                oos.writeObject(new ArrayList<>(snapshot));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write import queue", e);
+                return;
+            }
+            if (!temp.renameTo(file)) {
+                Log.e(TAG, "Failed to replace import queue file");
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Job> readQueue() {
+        File file = new File(directory, QUEUE_FILE);
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            return (List<Job>) ois.readObject();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read import queue", e);
+            return new ArrayList<>();
+        }
+    }
+
+    // Walks the tree breadth-first and returns the document URIs of every image in it
+    public static List<Uri> listImages(ContentResolver resolver, Uri treeUri) {
+        List<Uri> images = new ArrayList<>();
+        String[] projection = {DocumentsContract.Document.COLUMN_DOCUMENT_ID, DocumentsContract.Document.COLUMN_MIME_TYPE};
+        Deque<String> folders = new ArrayDeque<>();
+        folders.add(DocumentsContract.getTreeDocumentId(treeUri));
+        while (!folders.isEmpty()) {
+            Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, folders.poll());
+            try (Cursor cursor = resolver.query(children, projection, null, null, null)) {
+                if (cursor == null) {
+                    continue;
+                }
+                while (cursor.moveToNext()) {
+                    String documentId = cursor.getString(0);
+                    String mimeType = cursor.getString(1);
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                        folders.add(documentId);
+                    } else if (mimeType != null && mimeType.startsWith("image/")) {
+                        images.add(DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId));
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to list folder: " + children, e);
+            }
+        }
+        return images;
+    }
+}
@@ -0,0 +1,378 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import photos05.android.model.Album;
+import photos05.android.model.AlbumSnapshot;
+import photos05.android.model.LibrarySnapshot;
+import photos05.android.model.Photo;
+import photos05.android.model.User;
+
+/**
+ * Backs up a library to a single zip archive holding the albums, the photo records and
+ * the images themselves, and restores it into the active profile.
+ * Both directions stream: each image goes from its source to its destination through one
+ * fixed-size buffer, or a channel transfer when the source is a plain file, so neither the
+ * images nor the whole archive are ever held in memory. Entries come in the order they are
+ * needed: a manifest, then for each album its name followed by its photo records, each
+ * record directly followed by its image unless an earlier record already carried it.
+ * Restored images are copied into the profile folder and committed BATCH_SIZE photos at a
+ * time on the UI thread; photos already in the target album are skipped.
+ */
+public class LibraryArchive {
+    private static final String TAG = "LibraryArchive";
+    private static final int FORMAT_VERSION = 1;
+    private static final String MANIFEST_ENTRY = "manifest";
+    private static final String ALBUM_SUFFIX = "/album";
+    private static final String PHOTO_SUFFIX = ".photo";
+    private static final String IMAGE_PREFIX = "images/";
+    private static final String IMAGES_DIR = "images";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 200;
+    private static final int PROGRESS_INTERVAL = 50;
+
+    public interface Listener {
+        // Called on the UI thread every few photos
+        void onProgress(int processed, int total);
+
+        // Called on the UI thread once the archive is done, or has failed
+        void onFinished(Result result);
+    }
+
+    public static class Result {
+        public int photos;
+        public int skipped;
+        // Set if the archive could not be written or read; photos committed before it stay
+        public IOException error;
+    }
+
+    private LibraryArchive() {
+    }
+
+    // Writes the active profile's library to target; the library can keep changing meanwhile
+    public static void export(Context context, Uri target, Listener listener) {
+        Context appContext = context.getApplicationContext();
+        LibrarySnapshot snapshot = DataManager.loadUser(appContext).snapshot();
+        AppExecutors.archive().execute(() -> {
+            Result result = new Result();
+            try {
+                write(appContext.getContentResolver(), snapshot, target, result, listener);
+            } catch (IOException e) {
+                Log.e(TAG, "Export failed", e);
+                result.error = e;
+            }
+            AppExecutors.runOnMain(() -> listener.onFinished(result));
+        });
+    }
+
+    // Adds the albums and photos in source to the active profile, merging albums with the same name
+    public static void restore(Context context, Uri source, Listener listener) {
+        Context appContext = context.getApplicationContext();
+        User user = DataManager.loadUser(appContext);
+        LibrarySnapshot existing = user.snapshot();
+        File imagesDir = new File(UserProfiles.activeDirectory(appContext), IMAGES_DIR);
+        AppExecutors.archive().execute(() -> {
+            Result result = new Result();
+            try {
+                read(appContext, user, existing, imagesDir, source, result, listener);
+            } catch (IOException e) {
+                Log.e(TAG, "Restore failed", e);
+                result.error = e;
+            }
+            AppExecutors.runOnMain(() -> listener.onFinished(result));
+        });
+    }
+
+    private static void write(ContentResolver resolver, LibrarySnapshot snapshot, Uri target,
+                              Result result, Listener listener) throws IOException {
+        int total = 0;
+        for (AlbumSnapshot album : snapshot.getAlbums()) {
+            total += album.getPhotos().size();
+        }
+        // Images shared by several albums are written once; only their entry names are remembered
+        Map<String, String> imageEntries = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        OutputStream out = resolver.openOutputStream(target, "w");
+        if (out == null) {
+            throw new FileNotFoundException("Cannot write " + target);
+        }
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE))) {
+            // Photos are already compressed; deflating them again only costs time
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            WritableByteChannel channel = Channels.newChannel(zip);
+
+            zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+            DataOutputStream manifest = new DataOutputStream(zip);
+            manifest.writeInt(FORMAT_VERSION);
+            manifest.writeUTF(snapshot.getUsername());
+            manifest.writeInt(snapshot.getAlbums().size());
+            manifest.writeInt(total);
+            manifest.flush();
+            zip.closeEntry();
+
+            int processed = 0;
+            List<AlbumSnapshot> albums = snapshot.getAlbums();
+            for (int a = 0; a < albums.size(); a++) {
+                AlbumSnapshot album = albums.get(a);
+                String folder = String.format(Locale.ROOT, "albums/%05d", a);
+                zip.putNextEntry(new ZipEntry(folder + ALBUM_SUFFIX));
+                DataOutputStream name = new DataOutputStream(zip);
+                name.writeUTF(album.getName());
+                name.flush();
+                zip.closeEntry();
+
+                List<Photo> photos = album.getPhotos();
+                for (int p = 0; p < photos.size(); p++) {
+                    Photo photo = photos.get(p);
+                    processed++;
+                    String image = imageEntries.get(photo.getFilePath());
+                    ReadableByteChannel source = null;
+                    if (image == null) {
+                        // Open the image before writing its record, so an unreadable photo leaves no trace
+                        try {
+                            source = openImage(resolver, photo.getFilePath());
+                        } catch (IOException | SecurityException e) {
+                            Log.w(TAG, "Skipping unreadable photo " + photo.getFilePath(), e);
+                            result.skipped++;
+                            continue;
+                        }
+                        image = IMAGE_PREFIX + imageEntries.size();
+                    }
+
+                    zip.putNextEntry(new ZipEntry(String.format(Locale.ROOT, "%s/%05d%s", folder, p, PHOTO_SUFFIX)));
+                    ObjectOutputStream record = new ObjectOutputStream(zip);
+                    record.writeUTF(image);
+                    record.writeObject(photo);
+                    record.flush();
+                    zip.closeEntry();
+
+                    if (source != null) {
+                        zip.putNextEntry(new ZipEntry(image));
+                        try {
+                            transfer(source, channel, buffer);
+                        } finally {
+                            source.close();
+                        }
+                        zip.closeEntry();
+                        imageEntries.put(photo.getFilePath(), image);
+                    }
+                    result.photos++;
+                    if (processed % PROGRESS_INTERVAL == 0) {
+                        int done = processed;
+                        int count = total;
+                        AppExecutors.runOnMain(() -> listener.onProgress(done, count));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void read(Context context, User user, LibrarySnapshot existing, File imagesDir, Uri source,
+                             Result result, Listener listener) throws IOException {
+        if (!imagesDir.isDirectory() && !imagesDir.mkdirs()) {
+            throw new IOException("Cannot create " + imagesDir);
+        }
+        InputStream in = context.getContentResolver().openInputStream(source);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot read " + source);
+        }
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE))) {
+            ReadableByteChannel channel = Channels.newChannel(zip);
+            ZipEntry entry = zip.getNextEntry();
+            if (entry == null || !MANIFEST_ENTRY.equals(entry.getName())) {
+                throw new IOException("Not a library archive");
+            }
+            DataInputStream manifest = new DataInputStream(zip);
+            if (manifest.readInt() > FORMAT_VERSION) {
+                throw new IOException("Archive was written by a newer version");
+            }
+            manifest.readUTF();
+            manifest.readInt();
+            int total = manifest.readInt();
+
+            // Where each image entry ended up; small, since it holds paths rather than images
+            Map<String, String> restoredImages = new HashMap<>();
+            String albumName = null;
+            // Content hashes of the current album, to skip photos it already has
+            Set<String> albumHashes = new HashSet<>();
+            List<Photo> batch = new ArrayList<>();
+            Photo waiting = null;
+            String waitingImage = null;
+            int processed = 0;
+
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (name.endsWith(ALBUM_SUFFIX)) {
+                    result.photos += batch.size();
+                    commit(context, user, albumName, batch);
+                    albumName = new DataInputStream(zip).readUTF();
+                    albumHashes.clear();
+                    AlbumSnapshot album = existing.getAlbum(albumName);
+                    if (album != null) {
+                        for (Photo photo : album.getPhotos()) {
+                            albumHashes.add(photo.getContentHash());
+                        }
+                    }
+                    // Creates the album even if it turns out to be empty
+                    commit(context, user, albumName, batch);
+                } else if (name.endsWith(PHOTO_SUFFIX) && albumName != null) {
+                    ObjectInputStream record = new ObjectInputStream(zip);
+                    String image = record.readUTF();
+                    Photo photo;
+                    try {
+                        photo = (Photo) record.readObject();
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException("Unreadable photo record " + name, e);
+                    }
+                    processed++;
+                    String hash = photo.getContentHash();
+                    boolean duplicate = hash != null && !albumHashes.add(hash);
+                    if (duplicate) {
+                        result.skipped++;
+                    } else if (restoredImages.containsKey(image)) {
+                        batch.add(photo.copyTo(restoredImages.get(image)));
+                    }
+                    if (!restoredImages.containsKey(image)) {
+                        // The image is the next entry; it is restored even for a skipped photo,
+                        // since records in later albums point to it and it is written only once
+                        waiting = duplicate ? null : photo;
+                        waitingImage = image;
+                    }
+                    if (processed % PROGRESS_INTERVAL == 0) {
+                        int done = processed;
+                        AppExecutors.runOnMain(() -> listener.onProgress(done, total));
+                    }
+                } else if (name.startsWith(IMAGE_PREFIX) && name.equals(waitingImage)) {
+                    File file = new File(imagesDir, UUID.randomUUID().toString());
+                    try (FileChannel out = new FileOutputStream(file).getChannel()) {
+                        receive(channel, out);
+                    }
+                    String path = Uri.fromFile(file).toString();
+                    restoredImages.put(name, path);
+                    if (waiting != null) {
+                        batch.add(waiting.copyTo(path));
+                    }
+                    waiting = null;
+                    waitingImage = null;
+                }
+                // Anything else is passed over unread
+                if (batch.size() >= BATCH_SIZE) {
+                    result.photos += batch.size();
+                    commit(context, user, albumName, batch);
+                }
+            }
+            result.photos += batch.size();
+            commit(context, user, albumName, batch);
+        }
+    }
+
+    // Hands a batch to the UI thread, which adds it to the album, indexes it and saves once
+    private static void commit(Context context, User user, String albumName, List<Photo> batch) {
+        if (albumName == null) {
+            return;
+        }
+        List<Photo> photos = new ArrayList<>(batch);
+        batch.clear();
+        AppExecutors.runOnMain(() -> {
+            Album album = user.getAlbumByName(albumName);
+            if (album == null) {
+                album = new Album(albumName);
+                user.addAlbum(album);
+            }
+            if (!photos.isEmpty()) {
+                album.addPhotos(photos);
+                for (Photo photo : photos) {
+                    LibraryIndexes.photoAdded(user, photo);
+                }
+            }
+            DataManager.saveUser(user, context);
+        });
+    }
+
+    // Opens a photo for reading, as a file channel when the provider hands out a whole file
+    private static ReadableByteChannel openImage(ContentResolver resolver, String path) throws IOException {
+        Uri uri = Uri.parse(path);
+        try {
+            ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+            if (descriptor != null) {
+                ParcelFileDescriptor.AutoCloseInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+                // A pipe or socket reports no size, so a channel transfer would copy nothing
+                return descriptor.getStatSize() >= 0 ? in.getChannel() : Channels.newChannel(in);
+            }
+        } catch (FileNotFoundException e) {
+            // Not backed by a whole file, e.g. a pipe; the stream below may still work
+        }
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException(path);
+        }
+        return Channels.newChannel(in);
+    }
+
+    // Copies everything from source to target, letting a file channel transfer directly
+    private static void transfer(ReadableByteChannel source, WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        if (source instanceof FileChannel) {
+            FileChannel file = (FileChannel) source;
+            long position = file.position();
+            long size = file.size();
+            while (position < size) {
+                long sent = file.transferTo(position, Math.min(BUFFER_SIZE, size - position), target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+            return;
+        }
+        buffer.clear();
+        while (source.read(buffer) != -1 || buffer.position() > 0) {
+            buffer.flip();
+            target.write(buffer);
+            buffer.compact();
+        }
+    }
+
+    // Copies the rest of the current zip entry into a file, one buffer-sized transfer at a time
+    private static void receive(ReadableByteChannel source, FileChannel target) throws IOException {
+        long position = 0;
+        long received;
+        while ((received = target.transferFrom(source, position, BUFFER_SIZE)) > 0) {
+            position += received;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package photos05.android.util;
+
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import photos05.android.model.LibraryChange;
+import photos05.android.model.LibraryChangeListener;
+
+/**
+ * Delivers library changes to screens on the UI thread.
+ * A subscriber tied to a lifecycle receives changes at once while it is started;
+ * changes made while it is stopped are kept and replayed in order when it starts
+ * again, so a screen coming back only applies what happened in the meantime.
+ * Subscriptions end by themselves when the lifecycle is destroyed.
+ */
+public class LibraryChangeFeed implements LibraryChangeListener {
+    // Beyond this many held changes a stopped subscriber gets a single RESYNC instead
+    private static final int MAX_PENDING = 500;
+
+    private static final LibraryChangeFeed INSTANCE = new LibraryChangeFeed();
+
+    public interface Subscriber {
+        void onLibraryChanged(LibraryChange change);
+    }
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    private LibraryChangeFeed() {
+    }
+
+    public static LibraryChangeFeed get() {
+        return INSTANCE;
+    }
+
+    // Delivers changes to subscriber until owner is destroyed
+    public void subscribe(LifecycleOwner owner, Subscriber subscriber) {
+        Subscription subscription = new Subscription(owner.getLifecycle(), subscriber);
+        subscriptions.add(subscription);
+        owner.getLifecycle().addObserver(subscription);
+    }
+
+    @Override
+    public void onLibraryChanged(LibraryChange change) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            dispatch(change);
+        } else {
+            AppExecutors.runOnMain(() -> dispatch(change));
+        }
+    }
+
+    private void dispatch(LibraryChange change) {
+        // A subscriber may unsubscribe while handling a change
+        for (Subscription subscription : new ArrayList<>(subscriptions)) {
+            subscription.offer(change);
+        }
+    }
+
+    private class Subscription implements DefaultLifecycleObserver {
+        private final Lifecycle lifecycle;
+        private final Subscriber subscriber;
+        private final List<LibraryChange> pending = new ArrayList<>();
+        private boolean overflowed;
+
+        Subscription(Lifecycle lifecycle, Subscriber subscriber) {
+            this.lifecycle = lifecycle;
+            this.subscriber = subscriber;
+        }
+
+        void offer(LibraryChange change) {
+            if (lifecycle.getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                subscriber.onLibraryChanged(change);
+            } else if (!overflowed) {
+                pending.add(change);
+                if (pending.size() > MAX_PENDING) {
+                    pending.clear();
+                    overflowed = true;
+                }
+            }
+        }
+
+        @Override
+        public void onStart(@NonNull LifecycleOwner owner) {
+            List<LibraryChange> replay = new ArrayList<>(pending);
+            pending.clear();
+            if (overflowed) {
+                overflowed = false;
+                subscriber.onLibraryChanged(LibraryChange.resync());
+                return;
+            }
+            for (LibraryChange change : replay) {
+                subscriber.onLibraryChanged(change);
+            }
+        }
+
+        @Override
+        public void onDestroy(@NonNull LifecycleOwner owner) {
+            subscriptions.remove(this);
+            lifecycle.removeObserver(this);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package photos05.android.util;
+
+import java.util.function.LongSupplier;
+
+import photos05.android.model.Photo;
+import photos05.android.model.Tag;
+import photos05.android.model.User;
+
+/**
+ * Keeps the library-wide search indexes in step with the albums.
+ * Call these whenever a photo enters or leaves the library, or gains analysis results.
+ * An index dropped to save memory is skipped here; it reads the library as it is when next built.
+ */
+public class LibraryIndexes {
+
+    private LibraryIndexes() {
+    }
+
+    public static void photoAdded(User user, Photo photo) {
+        SimilarityIndex similarityIndex = SimilarityIndex.ifLoaded(user);
+        if (similarityIndex != null) {
+            similarityIndex.add(photo);
+        }
+        ColorIndex colorIndex = ColorIndex.ifLoaded(user);
+        if (colorIndex != null) {
+            colorIndex.add(photo);
+        }
+        DateIndex dateIndex = DateIndex.ifLoaded(user);
+        if (dateIndex != null) {
+            dateIndex.add(photo);
+        }
+        TagIndex tagIndex = TagIndex.ifLoaded(user);
+        if (tagIndex != null) {
+            tagIndex.add(photo);
+        }
+    }
+
+    public static void photoRemoved(User user, Photo photo) {
+        SimilarityIndex similarityIndex = SimilarityIndex.ifLoaded(user);
+        if (similarityIndex != null) {
+            similarityIndex.remove(photo);
+        }
+        ColorIndex colorIndex = ColorIndex.ifLoaded(user);
+        if (colorIndex != null) {
+            colorIndex.remove(photo);
+        }
+        DateIndex dateIndex = DateIndex.ifLoaded(user);
+        if (dateIndex != null) {
+            dateIndex.remove(photo);
+        }
+        TagIndex tagIndex = TagIndex.ifLoaded(user);
+        if (tagIndex != null) {
+            tagIndex.remove(photo);
+        }
+    }
+
+    // Call after metadata was read for a photo that had none, so its capture date is indexed
+    public static void metadataRead(User user, Photo photo) {
+        DateIndex dateIndex = DateIndex.ifLoaded(user);
+        if (dateIndex != null) {
+            dateIndex.add(photo);
+        }
+    }
+
+    // Call after a tag was added to a photo in the library
+    public static void tagAdded(User user, Photo photo, Tag tag) {
+        TagIndex tagIndex = TagIndex.ifLoaded(user);
+        if (tagIndex != null) {
+            tagIndex.tagAdded(photo, tag);
+        }
+    }
+
+    // Call after a tag was removed from a photo in the library
+    public static void tagRemoved(User user, Photo photo, Tag tag) {
+        TagIndex tagIndex = TagIndex.ifLoaded(user);
+        if (tagIndex != null) {
+            tagIndex.tagRemoved(photo, tag);
+        }
+    }
+
+    // Each index is given up whole when trimmed and rebuilt from the library on its next search
+    static void registerWith(MemoryGovernor governor) {
+        governor.register("Similarity index", MemoryGovernor.PRIORITY_INDEX,
+                droppable(SimilarityIndex::estimateBytes, SimilarityIndex::unload));
+        governor.register("Color index", MemoryGovernor.PRIORITY_INDEX,
+                droppable(ColorIndex::estimateBytes, ColorIndex::unload));
+        governor.register("Date index", MemoryGovernor.PRIORITY_INDEX,
+                droppable(DateIndex::estimateBytes, DateIndex::unload));
+        governor.register("Tag index", MemoryGovernor.PRIORITY_INDEX,
+                droppable(TagIndex::estimateBytes, TagIndex::unload));
+    }
+
+    private static MemoryGovernor.Cache droppable(LongSupplier footprint, Runnable unload) {
+        return new MemoryGovernor.Cache() {
+            @Override
+            public long getFootprint() {
+                return footprint.getAsLong();
+            }
+
+            @Override
+            public void trimTo(long bytes) {
+                if (footprint.getAsLong() > bytes) {
+                    unload.run();
+                }
+            }
+        };
+    }
+}
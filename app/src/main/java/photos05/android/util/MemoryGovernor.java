@@ -0,0 +1,158 @@
+package photos05.android.util;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Central owner of the memory held by the app's caches. Every cache registers with a priority
+ * and reports its footprint; on a trim-memory signal the governor shrinks them in priority
+ * order, lowest first, until the signal's target is met. Everything it gives up can be decoded
+ * or rebuilt again, so under pressure the app gets slower instead of being killed in the background.
+ * Trimming runs on the UI thread, where the callbacks arrive.
+ */
+public class MemoryGovernor implements ComponentCallbacks2 {
+    private static final String TAG = "MemoryGovernor";
+
+    // Lower priorities are shrunk first: the cheaper a cache is to refill, the lower its priority
+    public static final int PRIORITY_POOLED = 0;
+    public static final int PRIORITY_DECODED = 10;
+    public static final int PRIORITY_PRELOADED = 20;
+    public static final int PRIORITY_SORTED = 30;
+    public static final int PRIORITY_INDEX = 40;
+
+    // Share of the total footprint kept once the UI is hidden; in the background nothing is kept
+    private static final double UI_HIDDEN_KEEP = 0.5;
+    // While the app is in the foreground only caches up to this priority are given up,
+    // so the screen in use keeps its sort orders and indexes
+    private static final int RUNNING_MAX_PRIORITY = PRIORITY_PRELOADED;
+    // Share of those caches kept at each foreground pressure level
+    private static final double RUNNING_MODERATE_KEEP = 0.5;
+    private static final double RUNNING_LOW_KEEP = 0.25;
+
+    public interface Cache {
+        // Bytes currently held, estimated where they cannot be counted
+        long getFootprint();
+
+        // Gives memory back until at most bytes are held
+        void trimTo(long bytes);
+    }
+
+    private static class Registration {
+        final String name;
+        final int priority;
+        final Cache cache;
+
+        Registration(String name, int priority, Cache cache) {
+            this.name = name;
+            this.priority = priority;
+            this.cache = cache;
+        }
+    }
+
+    private static final MemoryGovernor INSTANCE = new MemoryGovernor();
+
+    private final List<Registration> registrations = new ArrayList<>();
+    private boolean installed;
+
+    private MemoryGovernor() {
+    }
+
+    public static MemoryGovernor get() {
+        return INSTANCE;
+    }
+
+    // Starts listening for memory signals and registers the library-wide caches; safe to call repeatedly
+    public static void install(Context context) {
+        synchronized (INSTANCE) {
+            if (INSTANCE.installed) {
+                return;
+            }
+            INSTANCE.installed = true;
+        }
+        context.getApplicationContext().registerComponentCallbacks(INSTANCE);
+        LibraryIndexes.registerWith(INSTANCE);
+        DataManager.registerWith(INSTANCE);
+    }
+
+    public synchronized void register(String name, int priority, Cache cache) {
+        registrations.add(new Registration(name, priority, cache));
+    }
+
+    public synchronized void unregister(Cache cache) {
+        registrations.removeIf(registration -> registration.cache == cache);
+    }
+
+    // Current footprint of each cache in bytes, lowest priority first; caches sharing a name are added up
+    public Map<String, Long> getFootprints() {
+        Map<String, Long> footprints = new LinkedHashMap<>();
+        for (Registration registration : byPriority()) {
+            footprints.merge(registration.name, registration.cache.getFootprint(), Long::sum);
+        }
+        return footprints;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            trim(0);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            trim(UI_HIDDEN_KEEP);
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            trim(0, RUNNING_MAX_PRIORITY);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trim(RUNNING_LOW_KEEP, RUNNING_MAX_PRIORITY);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            trim(RUNNING_MODERATE_KEEP, RUNNING_MAX_PRIORITY);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    // Shrinks caches, lowest priority first, until at most keep of the total footprint is left
+    private void trim(double keep) {
+        trim(keep, Integer.MAX_VALUE);
+    }
+
+    // Shrinks the caches up to maxPriority, lowest priority first, until at most keep of their footprint is left
+    private void trim(double keep, int maxPriority) {
+        List<Registration> ordered = byPriority();
+        ordered.removeIf(registration -> registration.priority > maxPriority);
+        long total = 0;
+        for (Registration registration : ordered) {
+            total += registration.cache.getFootprint();
+        }
+        long excess = total - (long) (total * keep);
+        for (Registration registration : ordered) {
+            if (excess <= 0) {
+                break;
+            }
+            Cache cache = registration.cache;
+            long before = cache.getFootprint();
+            cache.trimTo(Math.max(0, before - excess));
+            excess -= before - cache.getFootprint();
+        }
+        Log.i(TAG, "Trimmed caches from " + total + " bytes: " + getFootprints());
+    }
+
+    private synchronized List<Registration> byPriority() {
+        List<Registration> ordered = new ArrayList<>(registrations);
+        ordered.sort((a, b) -> Integer.compare(a.priority, b.priority));
+        return ordered;
+    }
+}
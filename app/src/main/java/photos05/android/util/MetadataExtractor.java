@@ -0,0 +1,204 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.PhotoMetadata;
+import photos05.android.model.User;
+
+/**
+ * Reads dimensions, capture date, file size and orientation of imported photos
+ * on the io executor and stores them on each Photo, along with its hashes and colour signature.
+ */
+public class MetadataExtractor {
+    private static final String TAG = "MetadataExtractor";
+    private static final String EXIF_DATE_FORMAT = "yyyy:MM:dd HH:mm:ss";
+
+    private MetadataExtractor() {
+    }
+
+    // Reads metadata, hashes and colour signatures for album photos missing any of them, then saves the user once
+    public static void extractMissing(Context context, User user, Album album, Runnable onDone) {
+        List<Photo> missing = new ArrayList<>();
+        for (Photo photo : album.getPhotos()) {
+            if (photo.getMetadata() == null || photo.getContentHash() == null
+                    || photo.getPerceptualHash() == null || photo.getColorSignature() == null) {
+                missing.add(photo);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        ContentResolver resolver = appContext.getContentResolver();
+        AppExecutors.io().execute(() -> {
+            List<PhotoMetadata> metadata = new ArrayList<>();
+            List<String> hashes = new ArrayList<>();
+            List<PhotoAnalysis> analyses = new ArrayList<>();
+            for (Photo photo : missing) {
+                Uri uri = Uri.parse(photo.getFilePath());
+                PhotoMetadata photoMetadata = photo.getMetadata() == null ? extract(resolver, uri) : photo.getMetadata();
+                metadata.add(photoMetadata);
+                PhotoAnalysis analysis = null;
+                if (photo.getPerceptualHash() == null || photo.getColorSignature() == null) {
+                    try {
+                        analysis = PhotoAnalysis.analyze(resolver, uri, photoMetadata);
+                    } catch (IOException | SecurityException e) {
+                        Log.e(TAG, "Failed to analyze URI: " + uri, e);
+                    }
+                }
+                analyses.add(analysis);
+                String hash = photo.getContentHash();
+                if (hash == null) {
+                    try {
+                        hash = ContentHasher.hash(resolver, uri);
+                    } catch (IOException | SecurityException e) {
+                        Log.e(TAG, "Failed to hash URI: " + uri, e);
+                    }
+                }
+                hashes.add(hash);
+            }
+            AppExecutors.runOnMain(() -> {
+                // The pass can take long; photos deleted or moved out meanwhile must not be indexed again
+                if (!hasAlbum(user, album)) {
+                    if (onDone != null) {
+                        onDone.run();
+                    }
+                    return;
+                }
+                Set<Photo> current = Collections.newSetFromMap(new IdentityHashMap<>());
+                current.addAll(album.getPhotos());
+                boolean changed = false;
+                for (int i = 0; i < missing.size(); i++) {
+                    Photo photo = missing.get(i);
+                    if (!current.contains(photo)) {
+                        continue;
+                    }
+                    if (metadata.get(i) != null && photo.getMetadata() == null) {
+                        photo.setMetadata(metadata.get(i));
+                        LibraryIndexes.metadataRead(user, photo);
+                        changed = true;
+                    }
+                    if (hashes.get(i) != null && photo.getContentHash() == null) {
+                        photo.setContentHash(hashes.get(i));
+                        changed = true;
+                    }
+                    PhotoAnalysis analysis = analyses.get(i);
+                    if (analysis != null) {
+                        // Re-index the photo under its new fingerprints
+                        LibraryIndexes.photoRemoved(user, photo);
+                        if (photo.getPerceptualHash() == null) {
+                            photo.setPerceptualHash(analysis.perceptualHash);
+                        }
+                        if (photo.getColorSignature() == null) {
+                            photo.setColorSignature(analysis.colorSignature);
+                        }
+                        LibraryIndexes.photoAdded(user, photo);
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    album.reindexContentHashes();
+                    // Capture dates may have been read for the first time
+                    album.refreshSummary();
+                    DataManager.saveUser(user, appContext);
+                }
+                if (onDone != null) {
+                    onDone.run();
+                }
+            });
+        });
+    }
+
+    private static boolean hasAlbum(User user, Album album) {
+        for (Album other : user.getAlbums()) {
+            if (other == album) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Reads the metadata of one image; returns null if the image cannot be opened
+    public static PhotoMetadata extract(ContentResolver resolver, Uri uri) {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream stream = resolver.openInputStream(uri)) {
+                BitmapFactory.decodeStream(stream, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+
+            long byteSize = -1;
+            long lastModified = 0;
+            try (Cursor cursor = resolver.query(uri, null, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    int sizeColumn = cursor.getColumnIndex(OpenableColumns.SIZE);
+                    if (sizeColumn >= 0 && !cursor.isNull(sizeColumn)) {
+                        byteSize = cursor.getLong(sizeColumn);
+                    }
+                    int modifiedColumn = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                    if (modifiedColumn >= 0 && !cursor.isNull(modifiedColumn)) {
+                        lastModified = cursor.getLong(modifiedColumn);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Not every provider supports queries (e.g. file:// URIs)
+            }
+
+            long dateTaken = 0;
+            int rotation = 0;
+            try (InputStream stream = resolver.openInputStream(uri)) {
+                if (stream != null) {
+                    ExifInterface exif = new ExifInterface(stream);
+                    rotation = exif.getRotationDegrees();
+                    dateTaken = parseExifDate(exif.getAttribute(ExifInterface.TAG_DATETIME_ORIGINAL));
+                }
+            } catch (IOException e) {
+                // Formats without EXIF support
+            }
+
+            return new PhotoMetadata(options.outWidth, options.outHeight,
+                    dateTaken != 0 ? dateTaken : lastModified, byteSize, rotation);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Failed to read metadata for URI: " + uri, e);
+            return null;
+        }
+    }
+
+    private static long parseExifDate(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            Date date = new SimpleDateFormat(EXIF_DATE_FORMAT, Locale.US).parse(value);
+            return date != null ? date.getTime() : 0;
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+}
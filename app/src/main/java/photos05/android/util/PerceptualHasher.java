@@ -0,0 +1,64 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.IOException;
+
+import photos05.android.model.PhotoMetadata;
+
+/**
+ * Computes a 64-bit difference hash (dHash) from a tiny downscaled decode.
+ * Visually near-identical photos, such as burst shots or edited copies,
+ * end up a few bits apart.
+ */
+public class PerceptualHasher {
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    // Decode at roughly this size before the final downscale
+    private static final int DECODE_SIZE = 64;
+
+    private PerceptualHasher() {
+    }
+
+    // Tiny decode shared by the perceptual hash and the colour signature; the caller recycles it
+    public static Bitmap decodeSmall(ContentResolver resolver, Uri uri, PhotoMetadata metadata) throws IOException {
+        if (metadata != null) {
+            return BitmapUtils.decodeSampled(resolver, uri, metadata.getWidth(), metadata.getHeight(),
+                    DECODE_SIZE, DECODE_SIZE, Bitmap.Config.ARGB_8888, null);
+        }
+        return BitmapUtils.decodeSampled(resolver, uri, DECODE_SIZE, DECODE_SIZE);
+    }
+
+    public static long hash(Bitmap decoded) {
+        Bitmap small = Bitmap.createScaledBitmap(decoded, HASH_WIDTH, HASH_HEIGHT, true);
+        int[] pixels = new int[HASH_WIDTH * HASH_HEIGHT];
+        small.getPixels(pixels, 0, HASH_WIDTH, 0, 0, HASH_WIDTH, HASH_HEIGHT);
+        if (small != decoded) {
+            small.recycle();
+        }
+
+        int[] luminance = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int r = (pixels[i] >> 16) & 0xFF;
+            int g = (pixels[i] >> 8) & 0xFF;
+            int b = pixels[i] & 0xFF;
+            luminance[i] = (r * 299 + g * 587 + b * 114) / 1000;
+        }
+        return differenceHash(luminance);
+    }
+
+    // One bit per horizontally adjacent pair in a 9x8 grayscale grid: set when brightness increases
+    static long differenceHash(int[] luminance) {
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = luminance[y * HASH_WIDTH + x];
+                int right = luminance[y * HASH_WIDTH + x + 1];
+                hash = (hash << 1) | (left < right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+}
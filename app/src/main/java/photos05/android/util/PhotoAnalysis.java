@@ -0,0 +1,53 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.IOException;
+
+import photos05.android.model.PhotoMetadata;
+
+/**
+ * Visual fingerprints of a photo computed from one tiny decode:
+ * the perceptual hash and the colour signature.
+ */
+public class PhotoAnalysis {
+    // Larger bitmaps are scaled down to this before analysis
+    private static final int ANALYSIS_SIZE = 64;
+
+    public final long perceptualHash;
+    public final byte[] colorSignature;
+
+    private PhotoAnalysis(long perceptualHash, byte[] colorSignature) {
+        this.perceptualHash = perceptualHash;
+        this.colorSignature = colorSignature;
+    }
+
+    public static PhotoAnalysis analyze(ContentResolver resolver, Uri uri, PhotoMetadata metadata) throws IOException {
+        Bitmap small = PerceptualHasher.decodeSmall(resolver, uri, metadata);
+        try {
+            return new PhotoAnalysis(PerceptualHasher.hash(small), ColorSignature.compute(small));
+        } finally {
+            small.recycle();
+        }
+    }
+
+    // Analyzes an already decoded bitmap, such as a thumbnail; the bitmap itself is left untouched
+    public static PhotoAnalysis analyze(Bitmap decoded) {
+        int longest = Math.max(decoded.getWidth(), decoded.getHeight());
+        Bitmap small = decoded;
+        if (longest > ANALYSIS_SIZE) {
+            float scale = (float) ANALYSIS_SIZE / longest;
+            small = Bitmap.createScaledBitmap(decoded, Math.max(1, Math.round(decoded.getWidth() * scale)),
+                    Math.max(1, Math.round(decoded.getHeight() * scale)), true);
+        }
+        try {
+            return new PhotoAnalysis(PerceptualHasher.hash(small), ColorSignature.compute(small));
+        } finally {
+            if (small != decoded) {
+                small.recycle();
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package photos05.android.util;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import photos05.android.R;
+import photos05.android.model.Photo;
+
+/**
+ * Square thumbnail grid keyed by stable photo ids.
+ * New lists are diffed against the current one in the background,
+ * so only the cells that were added, removed or moved are rebound.
+ * In selection mode, toggling a cell only redraws its highlight.
+ */
+public class PhotoGridAdapter extends ListAdapter<Photo, PhotoGridAdapter.PhotoViewHolder> {
+
+    public interface OnPhotoClickListener {
+        void onPhotoClick(int position, Photo photo);
+
+        void onPhotoLongClick(int position, Photo photo);
+    }
+
+    private static final DiffUtil.ItemCallback<Photo> DIFF_CALLBACK = new DiffUtil.ItemCallback<Photo>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Photo oldItem, @NonNull Photo newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Photo oldItem, @NonNull Photo newItem) {
+            // A cell only shows the image itself
+            return oldItem.getFilePath().equals(newItem.getFilePath());
+        }
+    };
+
+    // Rebinds only the selection highlight, not the thumbnail
+    private static final Object PAYLOAD_SELECTION = new Object();
+    private static final float SELECTED_ALPHA = 0.5f;
+
+    private final ThumbnailLoader thumbnailLoader;
+    private final int cellSize;
+    private final int padding;
+    private final int selectedColor;
+    private OnPhotoClickListener listener;
+    private final Set<Long> selectedIds = new HashSet<>();
+    private boolean selecting;
+
+    public PhotoGridAdapter(Context context, int cellSize, int padding) {
+        super(DIFF_CALLBACK);
+        this.thumbnailLoader = ThumbnailLoader.getInstance(context);
+        this.cellSize = cellSize;
+        this.padding = padding;
+        this.selectedColor = context.getColor(R.color.dark_magenta);
+        setHasStableIds(true);
+    }
+
+    public boolean isSelecting() {
+        return selecting;
+    }
+
+    // Enters selection mode with the photo at position selected
+    public void startSelection(int position) {
+        selecting = true;
+        toggleSelection(position);
+    }
+
+    public void toggleSelection(int position) {
+        long id = getItem(position).getId();
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        notifyItemChanged(position, PAYLOAD_SELECTION);
+    }
+
+    // Leaves selection mode and clears the highlight of every selected cell
+    public void clearSelection() {
+        selecting = false;
+        if (selectedIds.isEmpty()) {
+            return;
+        }
+        List<Photo> current = getCurrentList();
+        for (int i = 0; i < current.size(); i++) {
+            if (selectedIds.remove(current.get(i).getId())) {
+                notifyItemChanged(i, PAYLOAD_SELECTION);
+            }
+        }
+        selectedIds.clear();
+    }
+
+    public int getSelectedCount() {
+        return selectedIds.size();
+    }
+
+    // Returns the selected photos in grid order
+    public List<Photo> getSelectedPhotos() {
+        List<Photo> selected = new ArrayList<>();
+        for (Photo photo : getCurrentList()) {
+            if (selectedIds.contains(photo.getId())) {
+                selected.add(photo);
+            }
+        }
+        return selected;
+    }
+
+    // Rebinds the cells of photos whose image changed state, e.g. found missing
+    public void refreshPhotos(Collection<Photo> photos) {
+        Set<Photo> refreshed = Collections.newSetFromMap(new IdentityHashMap<>());
+        refreshed.addAll(photos);
+        List<Photo> current = getCurrentList();
+        for (int i = 0; i < current.size(); i++) {
+            if (refreshed.contains(current.get(i))) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+
+    public void setOnPhotoClickListener(OnPhotoClickListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    @NonNull
+    @Override
+    public PhotoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        ImageView imageView = new ImageView(parent.getContext());
+        imageView.setLayoutParams(new RecyclerView.LayoutParams(cellSize, cellSize));
+        imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        imageView.setPadding(padding, padding, padding, padding);
+
+        PhotoViewHolder holder = new PhotoViewHolder(imageView);
+        imageView.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                listener.onPhotoClick(position, getItem(position));
+            }
+        });
+        imageView.setOnLongClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                listener.onPhotoLongClick(position, getItem(position));
+                return true;
+            }
+            return false;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position) {
+        thumbnailLoader.load(holder.imageView, getItem(position), cellSize);
+        bindSelection(holder, position);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_SELECTION)) {
+            bindSelection(holder, position);
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    private void bindSelection(PhotoViewHolder holder, int position) {
+        boolean selected = selectedIds.contains(getItem(position).getId());
+        holder.imageView.setAlpha(selected ? SELECTED_ALPHA : 1f);
+        holder.imageView.setBackgroundColor(selected ? selectedColor : Color.TRANSPARENT);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull PhotoViewHolder holder) {
+        // Recycled cells hand their bitmaps back for reuse
+        thumbnailLoader.release(holder.imageView);
+    }
+
+    public static class PhotoViewHolder extends RecyclerView.ViewHolder {
+        final ImageView imageView;
+
+        PhotoViewHolder(@NonNull ImageView imageView) {
+            super(imageView);
+            this.imageView = imageView;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.User;
+
+/**
+ * Checks in the background that every photo's image can still be opened, a batch at a time,
+ * and records the answer on the photo. Images whose file was deleted or whose URI permission
+ * was revoked are then shown as a placeholder without touching storage, and are listed for
+ * cleanup. Batches run on the io executor between saves; results are applied on the UI thread.
+ */
+public class ReachabilitySweeper {
+    private static final int BATCH_SIZE = 100;
+    // A sweep on every return to the album list would keep storage busy for large libraries
+    private static final long MIN_INTERVAL_MS = 10 * 60 * 1000;
+
+    private static ReachabilitySweeper current;
+    // Whether a sweep is waiting for the library to load
+    private static boolean starting;
+    private static long lastFinished;
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final User user;
+    private final List<Album> albums;
+    // Answers by path, so a photo copied into several albums is opened once per sweep; io thread only
+    private final Map<String, Boolean> checked = new HashMap<>();
+    private int albumIndex;
+    private List<Photo> albumPhotos;
+    private int offset;
+    private boolean changed;
+
+    // Starts a sweep of the active library unless one is running or finished recently. UI thread only
+    public static void sweep(Context context) {
+        if (current != null || starting
+                || (lastFinished != 0 && SystemClock.elapsedRealtime() - lastFinished < MIN_INTERVAL_MS)) {
+            return;
+        }
+        starting = true;
+        Context appContext = context.getApplicationContext();
+        AppExecutors.io().execute(() -> {
+            User user = DataManager.loadUser(appContext);
+            AppExecutors.runOnMain(() -> {
+                if (!starting) {
+                    return;
+                }
+                starting = false;
+                current = new ReachabilitySweeper(appContext, user);
+                current.nextBatch();
+            });
+        });
+    }
+
+    // Stops the sweep of a profile that is no longer active
+    public static void unload() {
+        current = null;
+        starting = false;
+        lastFinished = 0;
+    }
+
+    // The missing photos of each album that has any, in album order
+    public static Map<Album, List<Photo>> findMissing(User user) {
+        Map<Album, List<Photo>> missing = new LinkedHashMap<>();
+        for (Album album : user.getAlbums()) {
+            for (Photo photo : album.getPhotos()) {
+                if (photo.isMissing()) {
+                    missing.computeIfAbsent(album, a -> new ArrayList<>()).add(photo);
+                }
+            }
+        }
+        return missing;
+    }
+
+    private ReachabilitySweeper(Context context, User user) {
+        this.context = context;
+        this.resolver = context.getContentResolver();
+        this.user = user;
+        this.albums = new ArrayList<>(user.getAlbums());
+    }
+
+    private void nextBatch() {
+        if (current != this) {
+            return;
+        }
+        // Albums are read one list at a time; the list is replaced, not edited, by later changes
+        while (albumPhotos == null || offset >= albumPhotos.size()) {
+            if (albumIndex >= albums.size()) {
+                finish();
+                return;
+            }
+            albumPhotos = albums.get(albumIndex++).getPhotos();
+            offset = 0;
+        }
+        Album album = albums.get(albumIndex - 1);
+        List<Photo> batch = albumPhotos.subList(offset, Math.min(offset + BATCH_SIZE, albumPhotos.size()));
+        offset += batch.size();
+
+        AppExecutors.io().execute(() -> {
+            List<Photo> missing = new ArrayList<>();
+            List<Photo> reachable = new ArrayList<>();
+            for (Photo photo : batch) {
+                (isReachable(photo.getFilePath()) ? reachable : missing).add(photo);
+            }
+            AppExecutors.runOnMain(() -> apply(album, missing, reachable));
+        });
+    }
+
+    private void apply(Album album, List<Photo> missing, List<Photo> reachable) {
+        if (current != this) {
+            return;
+        }
+        changed |= album.setMissing(missing, true);
+        changed |= album.setMissing(reachable, false);
+        nextBatch();
+    }
+
+    private void finish() {
+        current = null;
+        lastFinished = SystemClock.elapsedRealtime();
+        if (changed) {
+            DataManager.saveUser(user, context);
+        }
+    }
+
+    private boolean isReachable(String path) {
+        Boolean known = checked.get(path);
+        if (known != null) {
+            return known;
+        }
+        boolean reachable;
+        try (AssetFileDescriptor descriptor = resolver.openAssetFileDescriptor(Uri.parse(path), "r")) {
+            reachable = descriptor != null;
+        } catch (FileNotFoundException | SecurityException e) {
+            reachable = false;
+        } catch (IOException e) {
+            // Opened but failed to close; the image is there
+            reachable = true;
+        }
+        checked.put(path, reachable);
+        return reachable;
+    }
+}
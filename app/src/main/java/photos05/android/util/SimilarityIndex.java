@@ -0,0 +1,83 @@
+package photos05.android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.User;
+
+/**
+ * Library-wide BK-tree of perceptual hashes for "similar photos" lookups.
+ * Built once per loaded user and kept up to date as photos are added,
+ * hashed or removed. Used from the UI thread only.
+ */
+public class SimilarityIndex {
+    // Hashes at most this many bits apart count as near-duplicates
+    public static final int DEFAULT_MAX_DISTANCE = 10;
+
+    // Tree node, child array share and item list per indexed photo
+    private static final int ENTRY_BYTES = 160;
+
+    private static SimilarityIndex instance;
+
+    private final User user;
+    private final BkTree<Photo> tree = new BkTree<>();
+
+    public static SimilarityIndex get(User user) {
+        if (instance == null || instance.user != user) {
+            instance = new SimilarityIndex(user);
+        }
+        return instance;
+    }
+
+    // Drops the index of a profile that is no longer active
+    public static void unload() {
+        instance = null;
+    }
+
+    // The index if it is built for user, otherwise null; it reads the library when next built
+    static SimilarityIndex ifLoaded(User user) {
+        return instance != null && instance.user == user ? instance : null;
+    }
+
+    // Rough heap size of the built index, or 0 if none is built
+    static long estimateBytes() {
+        return instance != null ? (long) instance.tree.size() * ENTRY_BYTES : 0;
+    }
+
+    private SimilarityIndex(User user) {
+        this.user = user;
+        for (Album album : user.getAlbums()) {
+            for (Photo photo : album.getPhotos()) {
+                add(photo);
+            }
+        }
+    }
+
+    public void add(Photo photo) {
+        if (photo.getPerceptualHash() != null) {
+            tree.add(photo.getPerceptualHash(), photo);
+        }
+    }
+
+    public void remove(Photo photo) {
+        if (photo.getPerceptualHash() != null) {
+            tree.remove(photo.getPerceptualHash(), photo);
+        }
+    }
+
+    // Photos that look like the given one, closest first, not including the photo itself
+    public List<Photo> findSimilar(Photo photo, int maxDistance) {
+        List<Photo> similar = new ArrayList<>();
+        if (photo.getPerceptualHash() == null) {
+            return similar;
+        }
+        for (BkTree.Match<Photo> match : tree.search(photo.getPerceptualHash(), maxDistance)) {
+            if (match.item != photo) {
+                similar.add(match.item);
+            }
+        }
+        return similar;
+    }
+}
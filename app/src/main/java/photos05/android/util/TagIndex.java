@@ -0,0 +1,370 @@
+package photos05.android.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.Tag;
+import photos05.android.model.User;
+
+/**
+ * Registry of the tag types in the library, discovered from the tags themselves, with one
+ * index partition per type. Each partition maps the type's values, in lower case and sorted,
+ * to the photos carrying them, so a prefix search reads one range of one partition and never
+ * touches the values of other types. Partitions also count their distinct values and the
+ * photos using the type. Type and value matching ignore case, like the search always has.
+ * <p>
+ * For typo-tolerant search each partition also maps every trigram of its values to the
+ * values containing it. A value within edit distance k of the query still contains all but
+ * 3k of the query's padded trigrams, so only values meeting that count are checked
+ * with a bounded edit distance, instead of every value of the type.
+ * Used from the UI thread only.
+ */
+public class TagIndex {
+    // Offered even before any photo uses them
+    private static final String[] BUILT_IN_TYPES = {"Person", "Location"};
+    private static final int GRAM = 3;
+    // Padding around values so their first and last characters form full trigrams
+    private static final char PAD = '\u0000';
+
+    // A value's map entry, key string and photo map; a photo's entry in one map; a value's entry in one trigram set
+    private static final int VALUE_BYTES = 160;
+    private static final int POSTING_BYTES = 40;
+    private static final int GRAM_BYTES = 48;
+
+    private static TagIndex instance;
+
+    // What the registry knows about one tag type
+    public static class TypeStats {
+        public final String name;
+        public final int valueCount;
+        public final int photoCount;
+
+        TypeStats(String name, int valueCount, int photoCount) {
+            this.name = name;
+            this.valueCount = valueCount;
+            this.photoCount = photoCount;
+        }
+    }
+
+    private static class Value {
+        final String display;
+        // Photos with this value, each counted once per matching tag
+        final Map<Photo, Integer> photos = new LinkedHashMap<>();
+
+        Value(String display) {
+            this.display = display;
+        }
+    }
+
+    private static class Partition {
+        final String name;
+        final TreeMap<String, Value> values = new TreeMap<>();
+        // Tags of this type on each photo, so the photo count is the size of the map
+        final Map<Photo, Integer> tagsPerPhoto = new IdentityHashMap<>();
+        // Trigram to the keys of the values containing it
+        final Map<String, Set<String>> grams = new HashMap<>();
+
+        Partition(String name) {
+            this.name = name;
+        }
+    }
+
+    private final User user;
+    private final Map<String, Partition> partitions = new HashMap<>();
+
+    public static TagIndex get(User user) {
+        if (instance == null || instance.user != user) {
+            instance = new TagIndex(user);
+        }
+        return instance;
+    }
+
+    // Drops the index of a profile that is no longer active
+    public static void unload() {
+        instance = null;
+    }
+
+    // The index if it is built for user, otherwise null; it reads the library when next built
+    static TagIndex ifLoaded(User user) {
+        return instance != null && instance.user == user ? instance : null;
+    }
+
+    // Rough heap size of the built index, or 0 if none is built
+    static long estimateBytes() {
+        return instance != null ? instance.footprint() : 0;
+    }
+
+    private TagIndex(User user) {
+        this.user = user;
+        for (String type : BUILT_IN_TYPES) {
+            partitions.put(key(type), new Partition(type));
+        }
+        for (Album album : user.getAlbums()) {
+            for (Photo photo : album.getPhotos()) {
+                add(photo);
+            }
+        }
+    }
+
+    public void add(Photo photo) {
+        for (Tag tag : photo.getTags()) {
+            tagAdded(photo, tag);
+        }
+    }
+
+    public void remove(Photo photo) {
+        for (Tag tag : photo.getTags()) {
+            tagRemoved(photo, tag);
+        }
+    }
+
+    public void tagAdded(Photo photo, Tag tag) {
+        String typeKey = key(tag.getName());
+        Partition partition = partitions.get(typeKey);
+        if (partition == null) {
+            partition = new Partition(tag.getName());
+            partitions.put(typeKey, partition);
+        }
+        String valueKey = key(tag.getValue());
+        Value value = partition.values.get(valueKey);
+        if (value == null) {
+            value = new Value(tag.getValue());
+            partition.values.put(valueKey, value);
+            for (String gram : grams(valueKey)) {
+                partition.grams.computeIfAbsent(gram, g -> new HashSet<>()).add(valueKey);
+            }
+        }
+        value.photos.merge(photo, 1, Integer::sum);
+        partition.tagsPerPhoto.merge(photo, 1, Integer::sum);
+    }
+
+    public void tagRemoved(Photo photo, Tag tag) {
+        String typeKey = key(tag.getName());
+        Partition partition = partitions.get(typeKey);
+        if (partition == null) {
+            return;
+        }
+        String valueKey = key(tag.getValue());
+        Value value = partition.values.get(valueKey);
+        if (value == null || !value.photos.containsKey(photo)) {
+            return;
+        }
+        decrement(value.photos, photo);
+        if (value.photos.isEmpty()) {
+            partition.values.remove(valueKey);
+            for (String gram : grams(valueKey)) {
+                Set<String> keys = partition.grams.get(gram);
+                keys.remove(valueKey);
+                if (keys.isEmpty()) {
+                    partition.grams.remove(gram);
+                }
+            }
+        }
+        decrement(partition.tagsPerPhoto, photo);
+        // Types found in the data go away with their last tag; built-in ones stay
+        if (partition.values.isEmpty() && !isBuiltIn(typeKey)) {
+            partitions.remove(typeKey);
+        }
+    }
+
+    // Type names for spinners: most used first, built-in types always included
+    public List<String> getTypes() {
+        List<Partition> sorted = new ArrayList<>(partitions.values());
+        sorted.sort((a, b) -> a.tagsPerPhoto.size() != b.tagsPerPhoto.size()
+                ? Integer.compare(b.tagsPerPhoto.size(), a.tagsPerPhoto.size())
+                : a.name.compareToIgnoreCase(b.name));
+        List<String> names = new ArrayList<>(sorted.size());
+        for (Partition partition : sorted) {
+            names.add(partition.name);
+        }
+        return names;
+    }
+
+    // Returns the counts of one type, or null if the library has no such type
+    public TypeStats getStats(String type) {
+        Partition partition = partitions.get(key(type));
+        if (partition == null) {
+            return null;
+        }
+        return new TypeStats(partition.name, partition.values.size(), partition.tagsPerPhoto.size());
+    }
+
+    // Photos with a tag of the type whose value starts with prefix, reading only that type's partition
+    public Set<Photo> search(String type, String prefix) {
+        Partition partition = partitions.get(key(type));
+        if (partition == null) {
+            return Collections.emptySet();
+        }
+        String start = key(prefix);
+        Set<Photo> matches = new LinkedHashSet<>();
+        for (Map.Entry<String, Value> entry : partition.values.tailMap(start, true).entrySet()) {
+            if (!entry.getKey().startsWith(start)) {
+                break;
+            }
+            matches.addAll(entry.getValue().photos.keySet());
+        }
+        return matches;
+    }
+
+    // Photos with a tag of the type whose value is within a few typos of query, closest values first
+    public Set<Photo> fuzzySearch(String type, String query) {
+        Partition partition = partitions.get(key(type));
+        String target = key(query);
+        if (partition == null || target.isEmpty()) {
+            return search(type, query);
+        }
+        int maxDistance = maxDistance(target);
+        // Each edit removes at most GRAM of the query's trigrams from the value
+        Set<String> queryGrams = new HashSet<>(grams(target));
+        int minShared = queryGrams.size() - GRAM * maxDistance;
+
+        Map<String, Integer> shared = new HashMap<>();
+        if (minShared > 0) {
+            for (String gram : queryGrams) {
+                Set<String> keys = partition.grams.get(gram);
+                if (keys != null) {
+                    for (String valueKey : keys) {
+                        shared.merge(valueKey, 1, Integer::sum);
+                    }
+                }
+            }
+        } else {
+            // Queries made of a few repeated characters cannot be filtered by trigrams
+            for (String valueKey : partition.values.keySet()) {
+                shared.put(valueKey, 0);
+            }
+        }
+
+        List<String> close = new ArrayList<>();
+        Map<String, Integer> distances = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            String valueKey = entry.getKey();
+            if (entry.getValue() < minShared || Math.abs(valueKey.length() - target.length()) > maxDistance) {
+                continue;
+            }
+            int distance = editDistance(target, valueKey, maxDistance);
+            if (distance <= maxDistance) {
+                close.add(valueKey);
+                distances.put(valueKey, distance);
+            }
+        }
+        close.sort((a, b) -> !distances.get(a).equals(distances.get(b))
+                ? Integer.compare(distances.get(a), distances.get(b))
+                : a.compareTo(b));
+
+        Set<Photo> matches = new LinkedHashSet<>();
+        for (String valueKey : close) {
+            matches.addAll(partition.values.get(valueKey).photos.keySet());
+        }
+        return matches;
+    }
+
+    // Every distinct value of every type, for autocompletion
+    public Set<String> getAllValues() {
+        Set<String> values = new LinkedHashSet<>();
+        for (Partition partition : partitions.values()) {
+            for (Value value : partition.values.values()) {
+                values.add(value.display);
+            }
+        }
+        return values;
+    }
+
+    private long footprint() {
+        long bytes = 0;
+        for (Partition partition : partitions.values()) {
+            bytes += (long) partition.values.size() * VALUE_BYTES
+                    + (long) partition.tagsPerPhoto.size() * POSTING_BYTES;
+            for (Value value : partition.values.values()) {
+                bytes += (long) value.photos.size() * POSTING_BYTES;
+            }
+            for (Set<String> keys : partition.grams.values()) {
+                bytes += (long) keys.size() * GRAM_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    private static void decrement(Map<Photo, Integer> counts, Photo photo) {
+        Integer count = counts.get(photo);
+        if (count == null || count <= 1) {
+            counts.remove(photo);
+        } else {
+            counts.put(photo, count - 1);
+        }
+    }
+
+    // One typo for short queries, two from five characters
+    private static int maxDistance(String query) {
+        if (query.length() < 2) {
+            return 0;
+        }
+        return query.length() < 5 ? 1 : 2;
+    }
+
+    private static List<String> grams(String valueKey) {
+        StringBuilder padded = new StringBuilder();
+        for (int i = 0; i < GRAM - 1; i++) {
+            padded.append(PAD);
+        }
+        padded.append(valueKey);
+        for (int i = 0; i < GRAM - 1; i++) {
+            padded.append(PAD);
+        }
+        List<String> grams = new ArrayList<>(padded.length() - GRAM + 1);
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    // Levenshtein distance of a and b, or max + 1 as soon as it must exceed max
+    private static int editDistance(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static boolean isBuiltIn(String typeKey) {
+        for (String type : BUILT_IN_TYPES) {
+            if (key(type).equals(typeKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+}
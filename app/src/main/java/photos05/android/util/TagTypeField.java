@@ -0,0 +1,65 @@
+package photos05.android.util;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.Spinner;
+
+import java.util.List;
+
+import photos05.android.model.User;
+
+/**
+ * Tag type input for the add-tag dialogs: a spinner of the library's tag types, most used
+ * first, whose last entry reveals a text field for naming a new type.
+ */
+public class TagTypeField {
+    private static final String NEW_TYPE = "New Type...";
+
+    private final Spinner spinner;
+    private final EditText newTypeInput;
+    private final List<String> types;
+
+    // Adds the spinner and the hidden text field to layout
+    public TagTypeField(Context context, User user, LinearLayout layout) {
+        types = TagIndex.get(user).getTypes();
+        types.add(NEW_TYPE);
+
+        spinner = new Spinner(context);
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(context, android.R.layout.simple_spinner_item, types);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(adapter);
+        layout.addView(spinner);
+
+        newTypeInput = new EditText(context);
+        newTypeInput.setHint("Enter tag type");
+        newTypeInput.setVisibility(View.GONE);
+        layout.addView(newTypeInput);
+
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                newTypeInput.setVisibility(isNewType() ? View.VISIBLE : View.GONE);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    // Returns the chosen type, or an empty string if a new type was picked but not named
+    public String getType() {
+        if (isNewType()) {
+            return newTypeInput.getText().toString().trim();
+        }
+        return spinner.getSelectedItem().toString();
+    }
+
+    private boolean isNewType() {
+        return spinner.getSelectedItemPosition() == types.size() - 1;
+    }
+}
@@ -0,0 +1,393 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import photos05.android.R;
+import photos05.android.model.Photo;
+import photos05.android.model.PhotoMetadata;
+
+/**
+ * Loads grid thumbnails in the background with an in-memory cache.
+ * Cells first show the EXIF-embedded thumbnail when the image has one and
+ * are upgraded to a sampled decode of the full image once scrolling stops.
+ * The cache is bounded in bytes, so the LOW_MEMORY quality holds twice as many cells.
+ * Bitmaps that are neither cached nor shown by a cell go back to a
+ * BitmapPool so later decodes can reuse their memory.
+ * Photos recorded as missing show a shared placeholder without opening the image;
+ * an image that fails to open here is recorded as missing so the next bind is cheap.
+ * The pool and the cache are registered with the MemoryGovernor, which shrinks them under memory pressure.
+ * All methods except the decode itself run on the UI thread.
+ */
+public class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+    // Cell tag of a photo showing the missing placeholder
+    private static final String MISSING_KEY = "#missing";
+
+    private static ThumbnailLoader instance;
+
+    private final ContentResolver resolver;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final BitmapPool bitmapPool;
+    // Each cell gets its own drawable from the one decoded placeholder
+    private final Drawable.ConstantState missingPlaceholder;
+    private ThumbnailQuality quality;
+    // How many cells currently display each bitmap
+    private final Map<Bitmap, Integer> attached = new IdentityHashMap<>();
+    // Bitmaps currently held by memoryCache
+    private final Set<Bitmap> cached = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Cells showing an EXIF preview that still need a full decode
+    private final Map<ImageView, PendingUpgrade> previews = new HashMap<>();
+    private boolean scrolling;
+    // While the governor trims, evicted thumbnails are let go instead of pooled
+    private boolean trimming;
+
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ThumbnailLoader(Context context) {
+        this.resolver = context.getContentResolver();
+        this.quality = ThumbnailQuality.load(context);
+        this.missingPlaceholder = context.getDrawable(android.R.drawable.ic_menu_report_image).getConstantState();
+
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        int cacheBytes = (int) Math.min(Integer.MAX_VALUE, maxMemory / 8);
+        this.bitmapPool = new BitmapPool(maxMemory / 16);
+        this.memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue == newValue) {
+                    return;
+                }
+                cached.remove(oldValue);
+                if (!trimming && !attached.containsKey(oldValue)) {
+                    bitmapPool.put(oldValue);
+                }
+            }
+        };
+
+        MemoryGovernor governor = MemoryGovernor.get();
+        governor.register("Bitmap pool", MemoryGovernor.PRIORITY_POOLED, new MemoryGovernor.Cache() {
+            @Override
+            public long getFootprint() {
+                return bitmapPool.getCurrentBytes();
+            }
+
+            @Override
+            public void trimTo(long bytes) {
+                bitmapPool.trimTo(bytes);
+            }
+        });
+        // Cells on screen keep their bitmaps; only the cache's hold on them is given up
+        governor.register("Thumbnails", MemoryGovernor.PRIORITY_DECODED, new MemoryGovernor.Cache() {
+            @Override
+            public long getFootprint() {
+                return memoryCache.size();
+            }
+
+            @Override
+            public void trimTo(long bytes) {
+                trimming = true;
+                memoryCache.trimToSize((int) Math.min(Integer.MAX_VALUE, bytes));
+                trimming = false;
+            }
+        });
+    }
+
+    // Shows the photo's thumbnail, using its cached dimensions when metadata has been read
+    public void load(ImageView imageView, Photo photo, int size) {
+        if (photo.isMissing()) {
+            showMissing(imageView);
+            return;
+        }
+        PhotoMetadata metadata = photo.getMetadata();
+        // Cells are square and centre-cropped, so turning the view shows a sideways photo upright
+        // without decoding a rotated copy; the EXIF preview is stored the same way as the image
+        imageView.setRotation(metadata != null ? metadata.getRotationDegrees() : 0);
+        load(imageView, photo, photo.getFilePath(), size,
+                metadata != null ? metadata.getWidth() : 0, metadata != null ? metadata.getHeight() : 0);
+    }
+
+    // Shows the thumbnail for path in imageView, decoding it in the background if needed
+    public void load(ImageView imageView, String path, int size) {
+        load(imageView, path, size, 0, 0);
+    }
+
+    // Shows the thumbnail for path; sourceWidth and sourceHeight skip the bounds probe when known, otherwise 0
+    public void load(ImageView imageView, String path, int size, int sourceWidth, int sourceHeight) {
+        imageView.setRotation(0);
+        load(imageView, null, path, size, sourceWidth, sourceHeight);
+    }
+
+    // photo, if known, is recorded as missing when its image cannot be opened
+    private void load(ImageView imageView, Photo photo, String path, int size, int sourceWidth, int sourceHeight) {
+        Bitmap.Config config = quality.getConfig();
+        String key = cacheKey(path, size, config);
+        if (key.equals(imageView.getTag())) {
+            // Already showing or loading this thumbnail
+            return;
+        }
+        release(imageView);
+        imageView.setImageDrawable(null);
+        imageView.setTag(key);
+
+        Bitmap hit = memoryCache.get(key);
+        if (hit != null) {
+            attach(imageView, hit);
+            return;
+        }
+
+        PendingUpgrade pending = new PendingUpgrade(key, photo, path, size, config, sourceWidth, sourceHeight);
+        Bitmap preview = memoryCache.get(previewKey(key));
+        if (preview != null) {
+            showPreview(imageView, pending, preview);
+            return;
+        }
+
+        AppExecutors.decode().execute(() -> {
+            // Fast path: the thumbnail embedded in the EXIF header
+            Bitmap exifThumbnail = readExifThumbnail(path, config);
+            if (exifThumbnail != null) {
+                AppExecutors.runOnMain(() -> deliverPreview(imageView, pending, exifThumbnail));
+                return;
+            }
+            Bitmap bitmap = decodeSampled(pending);
+            AppExecutors.runOnMain(() -> deliver(imageView, pending, bitmap));
+        });
+    }
+
+    // Caches a thumbnail decoded elsewhere, e.g. by an import, so the grid shows it without decoding again
+    public void offer(String path, int size, Bitmap bitmap) {
+        String key = cacheKey(path, size, quality.getConfig());
+        if (bitmap.getConfig() != quality.getConfig() || memoryCache.get(key) != null) {
+            bitmapPool.put(bitmap);
+            return;
+        }
+        cached.add(bitmap);
+        memoryCache.put(key, bitmap);
+    }
+
+    // While scrolling, cells keep their EXIF previews; once it stops they are upgraded to full decodes
+    public void setScrolling(boolean scrolling) {
+        this.scrolling = scrolling;
+        if (!scrolling) {
+            for (Map.Entry<ImageView, PendingUpgrade> entry : new ArrayList<>(previews.entrySet())) {
+                startUpgrade(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // Called when a cell is recycled, so its bitmap can be reused once nothing else needs it
+    public void release(ImageView imageView) {
+        previews.remove(imageView);
+        detach(imageView);
+        imageView.setTag(null);
+    }
+
+    // Switches the thumbnail pixel format; cached thumbnails in the old format are dropped
+    public void setQuality(Context context, ThumbnailQuality quality) {
+        if (this.quality == quality) {
+            return;
+        }
+        this.quality = quality;
+        ThumbnailQuality.save(context, quality);
+        memoryCache.evictAll();
+        bitmapPool.clear();
+    }
+
+    // Drops every cached thumbnail and pooled bitmap, e.g. when another profile becomes active
+    public void clearMemory() {
+        memoryCache.evictAll();
+        bitmapPool.clear();
+    }
+
+    public ThumbnailQuality getQuality() {
+        return quality;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    private void deliver(ImageView imageView, PendingUpgrade pending, Bitmap bitmap) {
+        String key = pending.key;
+        if (bitmap == null) {
+            if (pending.unreachable && pending.photo != null) {
+                // Later binds show the placeholder without opening the image again
+                pending.photo.setMissing(true);
+                if (key.equals(imageView.getTag())) {
+                    showMissing(imageView);
+                }
+                return;
+            }
+            // Keep an EXIF preview if there is one, otherwise show the fallback image
+            if (key.equals(imageView.getTag()) && imageView.getTag(R.id.thumbnail_bitmap) == null) {
+                imageView.setImageResource(android.R.drawable.ic_menu_report_image);
+            }
+            return;
+        }
+        cached.add(bitmap);
+        memoryCache.put(key, bitmap);
+        if (key.equals(imageView.getTag())) {
+            previews.remove(imageView);
+            detach(imageView);
+            attach(imageView, bitmap);
+        }
+    }
+
+    private void deliverPreview(ImageView imageView, PendingUpgrade pending, Bitmap preview) {
+        cached.add(preview);
+        memoryCache.put(previewKey(pending.key), preview);
+        if (pending.key.equals(imageView.getTag()) && imageView.getTag(R.id.thumbnail_bitmap) == null) {
+            showPreview(imageView, pending, preview);
+        }
+    }
+
+    private void showPreview(ImageView imageView, PendingUpgrade pending, Bitmap preview) {
+        attach(imageView, preview);
+        previews.put(imageView, pending);
+        if (!scrolling) {
+            startUpgrade(imageView, pending);
+        }
+    }
+
+    private void startUpgrade(ImageView imageView, PendingUpgrade pending) {
+        previews.remove(imageView);
+        AppExecutors.decode().execute(() -> {
+            Bitmap bitmap = decodeSampled(pending);
+            AppExecutors.runOnMain(() -> deliver(imageView, pending, bitmap));
+        });
+    }
+
+    private Bitmap decodeSampled(PendingUpgrade pending) {
+        try {
+            Uri uri = Uri.parse(pending.path);
+            if (pending.sourceWidth > 0 && pending.sourceHeight > 0) {
+                return BitmapUtils.decodeSampled(resolver, uri, pending.sourceWidth, pending.sourceHeight,
+                        pending.size, pending.size, pending.config, bitmapPool);
+            }
+            return BitmapUtils.decodeSampled(resolver, uri, pending.size, pending.size, pending.config, bitmapPool);
+        } catch (FileNotFoundException | SecurityException e) {
+            // Deleted or no longer permitted; not worth a stack trace on every bind
+            Log.w(TAG, "Image is no longer reachable: " + pending.path);
+            pending.unreachable = true;
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load image for URI: " + pending.path, e);
+            return null;
+        }
+    }
+
+    private void showMissing(ImageView imageView) {
+        if (MISSING_KEY.equals(imageView.getTag())) {
+            return;
+        }
+        release(imageView);
+        imageView.setRotation(0);
+        imageView.setImageDrawable(missingPlaceholder.newDrawable());
+        imageView.setTag(MISSING_KEY);
+    }
+
+    // Reads only the stream header; returns null when there is no embedded thumbnail
+    private Bitmap readExifThumbnail(String path, Bitmap.Config config) {
+        byte[] data;
+        try (InputStream stream = resolver.openInputStream(Uri.parse(path))) {
+            data = stream != null ? ExifThumbnailReader.readThumbnail(new BufferedInputStream(stream)) : null;
+        } catch (Exception e) {
+            return null;
+        }
+        if (data == null) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        options.inMutable = config != Bitmap.Config.HARDWARE;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    // Removes the cell's bitmap and pools it if no other cell or cache entry uses it
+    private void detach(ImageView imageView) {
+        Object shown = imageView.getTag(R.id.thumbnail_bitmap);
+        imageView.setTag(R.id.thumbnail_bitmap, null);
+        if (!(shown instanceof Bitmap)) {
+            return;
+        }
+        imageView.setImageDrawable(null);
+
+        Bitmap bitmap = (Bitmap) shown;
+        Integer count = attached.get(bitmap);
+        if (count == null || count <= 1) {
+            attached.remove(bitmap);
+            if (!cached.contains(bitmap)) {
+                bitmapPool.put(bitmap);
+            }
+        } else {
+            attached.put(bitmap, count - 1);
+        }
+    }
+
+    private void attach(ImageView imageView, Bitmap bitmap) {
+        Integer count = attached.get(bitmap);
+        attached.put(bitmap, count == null ? 1 : count + 1);
+        imageView.setTag(R.id.thumbnail_bitmap, bitmap);
+        imageView.setImageBitmap(bitmap);
+    }
+
+    private static String cacheKey(String path, int size, Bitmap.Config config) {
+        return path + "#" + size + "#" + config;
+    }
+
+    private static String previewKey(String key) {
+        return key + "#exif";
+    }
+
+    private static class PendingUpgrade {
+        final String key;
+        // The photo being shown, or null when only the path is known
+        final Photo photo;
+        final String path;
+        final int size;
+        final Bitmap.Config config;
+        // Original dimensions if known, otherwise 0
+        final int sourceWidth;
+        final int sourceHeight;
+        // Set by the decode when the image could not be opened at all
+        boolean unreachable;
+
+        PendingUpgrade(String key, Photo photo, String path, int size, Bitmap.Config config, int sourceWidth, int sourceHeight) {
+            this.key = key;
+            this.photo = photo;
+            this.path = path;
+            this.size = size;
+            this.config = config;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package photos05.android.util;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+
+/**
+ * Pixel format used for grid thumbnails. The full-screen viewer always decodes ARGB_8888.
+ */
+public enum ThumbnailQuality {
+    // Full 32-bit colour with alpha
+    HIGH(Bitmap.Config.ARGB_8888),
+    // 16-bit colour, half the memory of HIGH
+    LOW_MEMORY(Bitmap.Config.RGB_565),
+    // Pixels live in graphics memory only; cannot be pooled or reused
+    HARDWARE(Bitmap.Config.HARDWARE);
+
+    private static final String PREFS_NAME = "settings";
+    private static final String KEY_THUMBNAIL_QUALITY = "thumbnail_quality";
+
+    private final Bitmap.Config config;
+
+    ThumbnailQuality(Bitmap.Config config) {
+        this.config = config;
+    }
+
+    public Bitmap.Config getConfig() {
+        return config;
+    }
+
+    // Returns the saved quality, defaulting to LOW_MEMORY on low-RAM devices
+    public static ThumbnailQuality load(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String saved = prefs.getString(KEY_THUMBNAIL_QUALITY, null);
+        if (saved != null) {
+            try {
+                return valueOf(saved);
+            } catch (IllegalArgumentException e) {
+                // Unknown value from an older version, fall through to the default
+            }
+        }
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager != null && activityManager.isLowRamDevice() ? LOW_MEMORY : HIGH;
+    }
+
+    public static void save(Context context, ThumbnailQuality quality) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_THUMBNAIL_QUALITY, quality.name())
+                .apply();
+    }
+}
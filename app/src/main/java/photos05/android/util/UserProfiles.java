@@ -0,0 +1,122 @@
+package photos05.android.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The profiles on this device and which one is active. Each profile keeps its library,
+ * album summaries and import queue in its own folder under files/profiles, so only the
+ * active profile's files are ever read. Profile names are unique, ignoring case.
+ */
+public class UserProfiles {
+    private static final String TAG = "UserProfiles";
+    private static final String PREFS_NAME = "settings";
+    private static final String KEY_ACTIVE_PROFILE = "active_profile";
+    private static final String PROFILES_DIR = "profiles";
+    public static final String DEFAULT_PROFILE = "default";
+    // Files an install from before profiles kept directly in the files folder
+    private static final String[] LEGACY_FILES = {"user_data.dat", "album_summaries.dat", "import_queue.dat"};
+
+    private UserProfiles() {
+    }
+
+    // Returns every profile name, sorted ignoring case
+    public static synchronized List<String> list(Context context) {
+        List<String> names = new ArrayList<>();
+        File[] folders = profilesRoot(context).listFiles(File::isDirectory);
+        if (folders != null) {
+            for (File folder : folders) {
+                names.add(decode(folder.getName()));
+            }
+        }
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    // Returns the matching profile name, or null if there is none
+    public static String find(Context context, String name) {
+        for (String profile : list(context)) {
+            if (profile.equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    public static synchronized void create(Context context, String name) {
+        File folder = new File(profilesRoot(context), encode(name));
+        if (!folder.mkdirs() && !folder.isDirectory()) {
+            Log.e(TAG, "Failed to create profile folder " + folder);
+        }
+    }
+
+    public static String getActive(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(KEY_ACTIVE_PROFILE, DEFAULT_PROFILE);
+    }
+
+    // Called by DataManager.switchUser, which also unloads the previous profile
+    static void setActive(Context context, String name) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_ACTIVE_PROFILE, name)
+                .apply();
+    }
+
+    // The folder holding the active profile's files
+    public static File activeDirectory(Context context) {
+        return directory(context, getActive(context));
+    }
+
+    public static synchronized File directory(Context context, String name) {
+        File folder = new File(profilesRoot(context), encode(name));
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            Log.e(TAG, "Failed to create profile folder " + folder);
+        }
+        return folder;
+    }
+
+    // The first time profiles are used, the existing library becomes the default profile
+    private static File profilesRoot(Context context) {
+        File root = new File(context.getFilesDir(), PROFILES_DIR);
+        if (root.isDirectory()) {
+            return root;
+        }
+        File defaultFolder = new File(root, encode(DEFAULT_PROFILE));
+        if (!defaultFolder.mkdirs()) {
+            Log.e(TAG, "Failed to create profile folder " + defaultFolder);
+            return root;
+        }
+        for (String fileName : LEGACY_FILES) {
+            File legacy = new File(context.getFilesDir(), fileName);
+            if (legacy.exists() && !legacy.renameTo(new File(defaultFolder, fileName))) {
+                Log.e(TAG, "Failed to move " + legacy + " into the default profile");
+            }
+        }
+        return root;
+    }
+
+    // Any name becomes a safe folder name; dots are escaped too so "." and ".." stay harmless
+    private static String encode(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String folderName) {
+        try {
+            return URLDecoder.decode(folderName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
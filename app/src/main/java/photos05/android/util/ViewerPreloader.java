@@ -0,0 +1,170 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import photos05.android.model.Photo;
+import photos05.android.model.PhotoMetadata;
+
+/**
+ * Keeps the current, previous and next viewer photos decoded at screen size.
+ * Slots form a ring indexed by photo position, so stepping forward or back
+ * only replaces the slot that fell out of range. Under memory pressure the
+ * neighbours are dropped and decoded again when the viewer steps onto them.
+ */
+public class ViewerPreloader implements MemoryGovernor.Cache {
+    private static final String TAG = "ViewerPreloader";
+    private static final int RING_SIZE = 3;
+
+    public interface OnBitmapReadyListener {
+        void onBitmapReady(int index, Bitmap bitmap);
+    }
+
+    private static class Slot {
+        int index = -1;
+        String path;
+        Bitmap bitmap;
+        boolean failed;
+        Future<?> task;
+    }
+
+    private final ContentResolver resolver;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final Slot[] slots = new Slot[RING_SIZE];
+    private OnBitmapReadyListener listener;
+    // The photo on screen, whose slot is never given up
+    private int currentIndex = -1;
+
+    public ViewerPreloader(ContentResolver resolver, int targetWidth, int targetHeight) {
+        this.resolver = resolver;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        for (int i = 0; i < RING_SIZE; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    public void setOnBitmapReadyListener(OnBitmapReadyListener listener) {
+        this.listener = listener;
+    }
+
+    // Returns the decoded bitmap for index if it is already in the ring
+    public Bitmap get(int index, String path) {
+        Slot slot = slotFor(index);
+        return slot.index == index && path.equals(slot.path) ? slot.bitmap : null;
+    }
+
+    // Returns true if decoding the photo at index has failed
+    public boolean hasFailed(int index, String path) {
+        Slot slot = slotFor(index);
+        return slot.index == index && path.equals(slot.path) && slot.failed;
+    }
+
+    // Makes sure index and its neighbours are decoded or being decoded
+    public void preloadAround(int index, List<Photo> photos) {
+        currentIndex = index;
+        load(index, photos);
+        load(index + 1, photos);
+        load(index - 1, photos);
+    }
+
+    // Cancels pending work and drops every decoded bitmap
+    public void clear() {
+        for (Slot slot : slots) {
+            reset(slot, -1, null);
+        }
+    }
+
+    @Override
+    public long getFootprint() {
+        long bytes = 0;
+        for (Slot slot : slots) {
+            if (slot.bitmap != null) {
+                bytes += slot.bitmap.getAllocationByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    // Drops decoded neighbours until at most bytes are held; the current photo stays
+    @Override
+    public void trimTo(long bytes) {
+        for (Slot slot : slots) {
+            if (getFootprint() <= bytes) {
+                return;
+            }
+            if (slot.index != currentIndex && slot.bitmap != null) {
+                reset(slot, -1, null);
+            }
+        }
+    }
+
+    private void load(int index, List<Photo> photos) {
+        if (index < 0 || index >= photos.size()) {
+            return;
+        }
+        String path = photos.get(index).getFilePath();
+        PhotoMetadata metadata = photos.get(index).getMetadata();
+        Slot slot = slotFor(index);
+        if (slot.index == index && path.equals(slot.path)) {
+            return;
+        }
+        reset(slot, index, path);
+        if (photos.get(index).isMissing()) {
+            // Known to be unreadable; shown as the fallback image without trying
+            slot.failed = true;
+            return;
+        }
+
+        slot.task = AppExecutors.decode().submit(() -> {
+            Bitmap bitmap = null;
+            try {
+                if (metadata != null) {
+                    // Known dimensions from import time save the bounds probe
+                    bitmap = BitmapUtils.decodeSampled(resolver, Uri.parse(path), metadata.getWidth(), metadata.getHeight(),
+                            targetWidth, targetHeight, Bitmap.Config.ARGB_8888, null);
+                } else {
+                    bitmap = BitmapUtils.decodeSampled(resolver, Uri.parse(path), targetWidth, targetHeight);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to decode viewer image: " + path, e);
+            }
+            Bitmap result = bitmap;
+            AppExecutors.runOnMain(() -> deliver(slot, index, path, result));
+        });
+    }
+
+    private void deliver(Slot slot, int index, String path, Bitmap bitmap) {
+        // The slot may have been reused for another photo while decoding
+        if (slot.index != index || !path.equals(slot.path)) {
+            return;
+        }
+        slot.task = null;
+        slot.bitmap = bitmap;
+        slot.failed = bitmap == null;
+        if (listener != null) {
+            listener.onBitmapReady(index, bitmap);
+        }
+    }
+
+    private void reset(Slot slot, int index, String path) {
+        if (slot.task != null) {
+            slot.task.cancel(false);
+        }
+        slot.task = null;
+        slot.bitmap = null;
+        slot.failed = false;
+        slot.index = index;
+        slot.path = path;
+    }
+
+    private Slot slotFor(int index) {
+        return slots[Math.floorMod(index, RING_SIZE)];
+    }
+}
@@ -0,0 +1,436 @@
+package photos05.android.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+
+import androidx.appcompat.widget.AppCompatImageView;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * ImageView that shows a screen-sized base bitmap and supports pinch zoom.
+ * While zoomed past the base bitmap's resolution, only the visible tiles of
+ * the original are decoded with BitmapRegionDecoder at the sample size the
+ * zoom needs. Tiles live in an LRU that evicts them as the user pans away.
+ * Photos stored sideways are turned upright by the draw matrix, for the base
+ * bitmap and the tiles alike, so neither is ever copied to rotate it.
+ */
+public class ZoomableImageView extends AppCompatImageView {
+    private static final String TAG = "ZoomableImageView";
+    // Tile edge in decoded pixels
+    private static final int TILE_SIZE = 512;
+    private static final float MIN_MAX_ZOOM = 4f;
+    private static final float DOUBLE_TAP_ZOOM = 3f;
+
+    private final Matrix baseMatrix = new Matrix();
+    private final Matrix zoomMatrix = new Matrix();
+    private final Matrix drawMatrix = new Matrix();
+    private final Matrix sourceToView = new Matrix();
+    private final Matrix viewToSource = new Matrix();
+    private final Matrix tileMatrix = new Matrix();
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF scratch = new RectF();
+
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+    private final LruCache<String, Bitmap> tileCache;
+    private final Set<String> pendingTiles = new HashSet<>();
+    // Tiles of a zoomed photo are decoded again from the source when the governor drops them
+    private final MemoryGovernor.Cache tileMemory = new MemoryGovernor.Cache() {
+        @Override
+        public long getFootprint() {
+            return tileCache.size();
+        }
+
+        @Override
+        public void trimTo(long bytes) {
+            tileCache.trimToSize((int) Math.min(Integer.MAX_VALUE, bytes));
+        }
+    };
+
+    private Uri source;
+    private BitmapRegionDecoder regionDecoder;
+    private boolean openingDecoder;
+    private int sourceWidth;
+    private int sourceHeight;
+    // Clockwise turn that shows the image upright, from its EXIF orientation
+    private int rotationDegrees;
+    // Incremented whenever the image changes so stale tile results are dropped
+    private int generation;
+
+    public ZoomableImageView(Context context) {
+        this(context, null);
+    }
+
+    public ZoomableImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setScaleType(ScaleType.MATRIX);
+
+        int cacheBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        tileCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                if (!isZoomed()) {
+                    return false;
+                }
+                zoomMatrix.postTranslate(-distanceX, -distanceY);
+                applyMatrix();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                if (isZoomed()) {
+                    resetZoom();
+                } else {
+                    zoomBy(DOUBLE_TAP_ZOOM, e.getX(), e.getY());
+                }
+                return true;
+            }
+        });
+    }
+
+    // Shows base as the fit-to-view layer, turned by rotationDegrees; source is decoded tile by tile when zoomed in
+    public void setImage(Bitmap base, Uri source, int rotationDegrees) {
+        setImageBitmap(base);
+        this.source = source;
+        this.rotationDegrees = rotationDegrees;
+        updateBaseMatrix();
+    }
+
+    public boolean isZoomed() {
+        return getCurrentZoom() > 1.01f;
+    }
+
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        super.setImageDrawable(drawable);
+        // Called from the super constructor before fields are initialised
+        if (tileCache != null) {
+            rotationDegrees = 0;
+            releaseSource();
+            updateBaseMatrix();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        MemoryGovernor.get().register("Zoom tiles", MemoryGovernor.PRIORITY_DECODED, tileMemory);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateBaseMatrix();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        gestureDetector.onTouchEvent(event);
+        if (isZoomed() || event.getPointerCount() > 1) {
+            // Keep the ScrollView from stealing pans and pinches
+            getParent().requestDisallowInterceptTouchEvent(true);
+            if (event.getPointerCount() > 1) {
+                cancelLongPress();
+            }
+        }
+        super.onTouchEvent(event);
+        return true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (!isZoomed() || regionDecoder == null) {
+            return;
+        }
+
+        int sampleSize = tileSampleSize();
+        if (sampleSize >= baseSampleSize()) {
+            // The base bitmap already has enough detail at this zoom
+            return;
+        }
+
+        Rect visible = visibleSourceRect();
+        if (visible.isEmpty()) {
+            return;
+        }
+
+        int tileSource = TILE_SIZE * sampleSize;
+        int firstCol = visible.left / tileSource;
+        int lastCol = (visible.right - 1) / tileSource;
+        int firstRow = visible.top / tileSource;
+        int lastRow = (visible.bottom - 1) / tileSource;
+
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                Rect tileRect = new Rect(col * tileSource, row * tileSource,
+                        Math.min((col + 1) * tileSource, sourceWidth),
+                        Math.min((row + 1) * tileSource, sourceHeight));
+                String key = sampleSize + "/" + col + "/" + row;
+                Bitmap tile = tileCache.get(key);
+                if (tile == null) {
+                    requestTile(key, tileRect, sampleSize);
+                    continue;
+                }
+                // Through the full source mapping, so the tile is turned like the base bitmap
+                tileMatrix.setScale((float) tileRect.width() / tile.getWidth(), (float) tileRect.height() / tile.getHeight());
+                tileMatrix.postTranslate(tileRect.left, tileRect.top);
+                tileMatrix.postConcat(sourceToView);
+                canvas.drawBitmap(tile, tileMatrix, tilePaint);
+            }
+        }
+        canvas.restore();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        MemoryGovernor.get().unregister(tileMemory);
+        releaseSource();
+    }
+
+    private void zoomBy(float factor, float focusX, float focusY) {
+        float zoom = getCurrentZoom();
+        float target = Math.max(1f, Math.min(zoom * factor, getMaxZoom()));
+        float applied = target / zoom;
+        zoomMatrix.postScale(applied, applied, focusX - getPaddingLeft(), focusY - getPaddingTop());
+        if (target <= 1f) {
+            zoomMatrix.reset();
+        }
+        applyMatrix();
+        if (regionDecoder == null && isZoomed()) {
+            openDecoder();
+        }
+    }
+
+    private void resetZoom() {
+        zoomMatrix.reset();
+        applyMatrix();
+    }
+
+    private float getCurrentZoom() {
+        float[] values = new float[9];
+        zoomMatrix.getValues(values);
+        return values[Matrix.MSCALE_X];
+    }
+
+    // Allow zooming until one source pixel covers at least two screen pixels
+    private float getMaxZoom() {
+        Drawable drawable = getDrawable();
+        if (drawable == null || sourceWidth == 0 || drawable.getIntrinsicWidth() <= 0) {
+            return MIN_MAX_ZOOM;
+        }
+        return Math.max(MIN_MAX_ZOOM, 2f * sourceWidth / drawable.getIntrinsicWidth());
+    }
+
+    // Turns the base bitmap upright and fits it inside the view
+    private void updateBaseMatrix() {
+        Drawable drawable = getDrawable();
+        int viewWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        int viewHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        baseMatrix.reset();
+        zoomMatrix.reset();
+        if (drawable != null && viewWidth > 0 && viewHeight > 0
+                && drawable.getIntrinsicWidth() > 0 && drawable.getIntrinsicHeight() > 0) {
+            RectF from = new RectF(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+            baseMatrix.setRotate(rotationDegrees);
+            baseMatrix.mapRect(from);
+            baseMatrix.postTranslate(-from.left, -from.top);
+            from.offsetTo(0, 0);
+            Matrix fit = new Matrix();
+            fit.setRectToRect(from, new RectF(0, 0, viewWidth, viewHeight), Matrix.ScaleToFit.CENTER);
+            baseMatrix.postConcat(fit);
+        }
+        applyMatrix();
+    }
+
+    // Keeps the zoomed image covering the view and recomputes the source mapping
+    private void applyMatrix() {
+        drawMatrix.set(baseMatrix);
+        drawMatrix.postConcat(zoomMatrix);
+
+        Drawable drawable = getDrawable();
+        if (drawable != null) {
+            scratch.set(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+            drawMatrix.mapRect(scratch);
+            float dx = clampOffset(scratch.left, scratch.right, getWidth() - getPaddingLeft() - getPaddingRight());
+            float dy = clampOffset(scratch.top, scratch.bottom, getHeight() - getPaddingTop() - getPaddingBottom());
+            if (dx != 0 || dy != 0) {
+                zoomMatrix.postTranslate(dx, dy);
+                drawMatrix.postTranslate(dx, dy);
+            }
+
+            if (sourceWidth > 0 && sourceHeight > 0) {
+                sourceToView.setScale((float) drawable.getIntrinsicWidth() / sourceWidth,
+                        (float) drawable.getIntrinsicHeight() / sourceHeight);
+                sourceToView.postConcat(drawMatrix);
+                sourceToView.invert(viewToSource);
+            }
+        }
+        setImageMatrix(drawMatrix);
+        invalidate();
+    }
+
+    private static float clampOffset(float start, float end, int viewSize) {
+        float size = end - start;
+        if (size <= viewSize) {
+            return (viewSize - size) / 2f - start;
+        } else if (start > 0) {
+            return -start;
+        } else if (end < viewSize) {
+            return viewSize - end;
+        }
+        return 0;
+    }
+
+    // Part of the original image currently on screen, in source pixels
+    private Rect visibleSourceRect() {
+        scratch.set(0, 0, getWidth() - getPaddingLeft() - getPaddingRight(), getHeight() - getPaddingTop() - getPaddingBottom());
+        viewToSource.mapRect(scratch);
+        Rect rect = new Rect();
+        scratch.roundOut(rect);
+        if (!rect.intersect(0, 0, sourceWidth, sourceHeight)) {
+            rect.setEmpty();
+        }
+        return rect;
+    }
+
+    // Power-of-two subsampling that still gives at least one decoded pixel per screen pixel
+    private int tileSampleSize() {
+        // The mapping may include a quarter turn, which moves the scale out of MSCALE_X
+        float screenPixelsPerSourcePixel = sourceToView.mapRadius(1f);
+        int sampleSize = 1;
+        while (sampleSize * 2 * screenPixelsPerSourcePixel <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private float baseSampleSize() {
+        Drawable drawable = getDrawable();
+        if (drawable == null || drawable.getIntrinsicWidth() <= 0) {
+            return 1;
+        }
+        return (float) sourceWidth / drawable.getIntrinsicWidth();
+    }
+
+    private void openDecoder() {
+        if (source == null || openingDecoder) {
+            return;
+        }
+        openingDecoder = true;
+        Uri uri = source;
+        int requestGeneration = generation;
+        ContentResolver resolver = getContext().getContentResolver();
+        AppExecutors.decode().execute(() -> {
+            BitmapRegionDecoder decoder = null;
+            try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r")) {
+                if (descriptor != null) {
+                    decoder = BitmapRegionDecoder.newInstance(descriptor);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Unable to open region decoder for " + uri, e);
+            }
+            BitmapRegionDecoder result = decoder;
+            AppExecutors.runOnMain(() -> {
+                if (requestGeneration != generation) {
+                    if (result != null) {
+                        result.recycle();
+                    }
+                    return;
+                }
+                openingDecoder = false;
+                regionDecoder = result;
+                if (result != null) {
+                    sourceWidth = result.getWidth();
+                    sourceHeight = result.getHeight();
+                    applyMatrix();
+                }
+            });
+        });
+    }
+
+    private void requestTile(String key, Rect region, int sampleSize) {
+        if (!pendingTiles.add(key)) {
+            return;
+        }
+        BitmapRegionDecoder decoder = regionDecoder;
+        int requestGeneration = generation;
+        AppExecutors.decode().execute(() -> {
+            Bitmap tile = null;
+            if (!decoder.isRecycled()) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleSize;
+                try {
+                    tile = decoder.decodeRegion(region, options);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to decode tile " + key, e);
+                }
+            }
+            Bitmap result = tile;
+            AppExecutors.runOnMain(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                pendingTiles.remove(key);
+                if (result != null) {
+                    tileCache.put(key, result);
+                    invalidate();
+                }
+            });
+        });
+    }
+
+    private void releaseSource() {
+        generation++;
+        source = null;
+        openingDecoder = false;
+        pendingTiles.clear();
+        tileCache.evictAll();
+        if (regionDecoder != null) {
+            // Pending tile decodes check isRecycled before using the decoder
+            regionDecoder.recycle();
+            regionDecoder = null;
+        }
+        sourceWidth = 0;
+        sourceHeight = 0;
+    }
+}
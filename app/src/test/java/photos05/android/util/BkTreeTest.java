@@ -0,0 +1,121 @@
+package photos05.android.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that BK-tree lookups find exactly the hashes a linear scan would,
+ * including those at the edge of the search radius.
+ */
+public class BkTreeTest {
+
+    @Test
+    public void search_includesMatchesAtExactlyMaxDistance() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(0b0000L, "root");
+        tree.add(0b0111L, "three");
+        tree.add(0b1111L, "four");
+
+        Set<String> found = items(tree.search(0b0001L, 2));
+
+        // "three" is 2 bits from the query, "four" is 3
+        assertEquals(setOf("root", "three"), found);
+    }
+
+    @Test
+    public void search_visitsChildrenAtBothEndsOfTheTriangleRange() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(0L, "root");
+        // Children of the root at distances 1, 4 and 5
+        tree.add(0b1L, "one");
+        tree.add(0b1111L, "four");
+        tree.add(0b11111L, "five");
+
+        // The query is 2 bits from the root, so with radius 2 only children 1..4 can match:
+        // "one" sits at the low end of that range and "four" at the high end
+        List<BkTree.Match<String>> matches = tree.search(0b11L, 2);
+
+        assertEquals(setOf("root", "one", "four"), items(matches));
+        for (BkTree.Match<String> match : matches) {
+            assertTrue(match.distance <= 2);
+        }
+    }
+
+    @Test
+    public void search_returnsClosestFirst() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(0b111L, "three");
+        tree.add(0b1L, "one");
+        tree.add(0L, "zero");
+
+        List<BkTree.Match<String>> matches = tree.search(0L, 3);
+
+        assertEquals(3, matches.size());
+        assertEquals("zero", matches.get(0).item);
+        assertEquals("one", matches.get(1).item);
+        assertEquals("three", matches.get(2).item);
+    }
+
+    @Test
+    public void search_matchesLinearScan() {
+        Random random = new Random(42);
+        BkTree<Integer> tree = new BkTree<>();
+        List<Long> hashes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Few set bits, so many hashes fall close to each other
+            long hash = random.nextLong() & random.nextLong() & random.nextLong();
+            hashes.add(hash);
+            tree.add(hash, i);
+        }
+
+        for (int q = 0; q < 50; q++) {
+            long query = hashes.get(random.nextInt(hashes.size())) ^ (1L << random.nextInt(64));
+            for (int radius = 0; radius <= 6; radius++) {
+                Set<Integer> expected = new HashSet<>();
+                for (int i = 0; i < hashes.size(); i++) {
+                    if (BkTree.distance(query, hashes.get(i)) <= radius) {
+                        expected.add(i);
+                    }
+                }
+                assertEquals(expected, items(tree.search(query, radius)));
+            }
+        }
+    }
+
+    @Test
+    public void remove_dropsOnlyTheGivenItem() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(5L, "a");
+        tree.add(5L, "b");
+        tree.add(6L, "c");
+
+        assertTrue(tree.remove(5L, "a"));
+        assertFalse(tree.remove(5L, "a"));
+        assertEquals(2, tree.size());
+        assertEquals(setOf("b", "c"), items(tree.search(5L, 2)));
+    }
+
+    private static <T> Set<T> items(List<BkTree.Match<T>> matches) {
+        Set<T> items = new HashSet<>();
+        for (BkTree.Match<T> match : matches) {
+            items.add(match.item);
+        }
+        return items;
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> setOf(T... items) {
+        Set<T> set = new HashSet<>();
+        for (T item : items) {
+            set.add(item);
+        }
+        return set;
+    }
+}
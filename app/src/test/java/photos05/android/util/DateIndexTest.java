@@ -0,0 +1,90 @@
+package photos05.android.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.PhotoMetadata;
+import photos05.android.model.User;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks date-range lookups against the capture-time index: both ends are inclusive,
+ * and photos taken at the same moment are indexed and removed independently.
+ */
+public class DateIndexTest {
+    private User user;
+    private Album album;
+
+    @Before
+    public void setUp() {
+        DateIndex.unload();
+        user = new User("test");
+        album = new Album("Trip");
+        user.addAlbum(album);
+    }
+
+    @Test
+    public void between_includesBothEnds() throws IOException {
+        Photo before = photoTakenAt(99);
+        Photo start = photoTakenAt(100);
+        Photo middle = photoTakenAt(150);
+        Photo end = photoTakenAt(200);
+        Photo after = photoTakenAt(201);
+        album.addPhotos(Arrays.asList(before, start, middle, end, after));
+
+        assertEquals(Arrays.asList(start, middle, end), DateIndex.get(user).between(100, 200));
+    }
+
+    @Test
+    public void between_singleInstantRange() throws IOException {
+        Photo photo = photoTakenAt(100);
+        album.addPhotos(Arrays.asList(photoTakenAt(99), photo, photoTakenAt(101)));
+
+        assertEquals(Collections.singletonList(photo), DateIndex.get(user).between(100, 100));
+    }
+
+    @Test
+    public void between_reversedRangeIsEmpty() throws IOException {
+        album.addPhotos(Collections.singletonList(photoTakenAt(100)));
+
+        assertTrue(DateIndex.get(user).between(200, 100).isEmpty());
+    }
+
+    @Test
+    public void between_skipsPhotosWithoutDate() throws IOException {
+        Photo undated = new Photo("content://test/undated");
+        Photo dated = photoTakenAt(100);
+        album.addPhotos(Arrays.asList(undated, dated));
+
+        assertEquals(Collections.singletonList(dated), DateIndex.get(user).between(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void samePathCopiesAreIndexedAndRemovedSeparately() throws IOException {
+        Photo original = photoTakenAt(100);
+        Photo copy = original.duplicate();
+        album.addPhotos(Arrays.asList(original, copy));
+        DateIndex index = DateIndex.get(user);
+
+        List<Photo> both = index.between(100, 100);
+        assertEquals(2, both.size());
+        assertTrue(both.contains(original) && both.contains(copy));
+
+        index.remove(original);
+        assertEquals(Collections.singletonList(copy), index.between(100, 100));
+    }
+
+    private static Photo photoTakenAt(long dateTaken) throws IOException {
+        Photo photo = new Photo("content://test/" + dateTaken);
+        photo.setMetadata(new PhotoMetadata(1, 1, dateTaken, 1, 0));
+        return photo;
+    }
+}
@@ -0,0 +1,139 @@
+package photos05.android.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks EXIF thumbnail extraction on hand-built headers, including segments cut
+ * short anywhere, which must give no thumbnail rather than fail.
+ */
+public class ExifThumbnailReaderTest {
+    private static final byte[] THUMBNAIL = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9};
+
+    @Test
+    public void parseApp1_readsLittleEndianThumbnail() {
+        assertArrayEquals(THUMBNAIL, ExifThumbnailReader.parseApp1(app1(true, THUMBNAIL)));
+    }
+
+    @Test
+    public void parseApp1_readsBigEndianThumbnail() {
+        assertArrayEquals(THUMBNAIL, ExifThumbnailReader.parseApp1(app1(false, THUMBNAIL)));
+    }
+
+    @Test
+    public void parseApp1_truncatedAnywhereGivesNull() {
+        byte[] segment = app1(true, THUMBNAIL);
+        for (int length = 0; length < segment.length; length++) {
+            assertNull(ExifThumbnailReader.parseApp1(Arrays.copyOf(segment, length)));
+        }
+    }
+
+    @Test
+    public void parseApp1_rejectsThumbnailPastSegmentEnd() {
+        byte[] segment = app1(true, THUMBNAIL);
+        // Claim one byte more than the segment holds
+        writeInt(segment, lengthFieldPosition(), THUMBNAIL.length + 1, true);
+        assertNull(ExifThumbnailReader.parseApp1(segment));
+    }
+
+    @Test
+    public void parseApp1_rejectsNonExifSegment() {
+        byte[] segment = app1(true, THUMBNAIL);
+        segment[0] = 'X';
+        assertNull(ExifThumbnailReader.parseApp1(segment));
+    }
+
+    @Test
+    public void parseApp1_withoutSecondIfdGivesNull() {
+        byte[] segment = app1(true, THUMBNAIL);
+        // Next-IFD offset of IFD0
+        writeInt(segment, 6 + 8 + 2, 0, true);
+        assertNull(ExifThumbnailReader.parseApp1(segment));
+    }
+
+    @Test
+    public void readThumbnail_findsApp1AfterOtherSegments() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        writeSegment(jpeg, 0xE0, new byte[]{'J', 'F', 'I', 'F', 0});
+        writeSegment(jpeg, 0xE1, app1(true, THUMBNAIL));
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xDA});
+
+        assertArrayEquals(THUMBNAIL, ExifThumbnailReader.readThumbnail(new ByteArrayInputStream(jpeg.toByteArray())));
+    }
+
+    @Test
+    public void readThumbnail_truncatedStreamGivesNull() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        writeSegment(jpeg, 0xE1, app1(true, THUMBNAIL));
+        byte[] bytes = jpeg.toByteArray();
+
+        for (int length = 0; length < bytes.length; length++) {
+            assertNull(ExifThumbnailReader.readThumbnail(new ByteArrayInputStream(Arrays.copyOf(bytes, length))));
+        }
+    }
+
+    @Test
+    public void readThumbnail_stopsAtImageData() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA});
+        writeSegment(jpeg, 0xE1, app1(true, THUMBNAIL));
+
+        assertNull(ExifThumbnailReader.readThumbnail(new ByteArrayInputStream(jpeg.toByteArray())));
+    }
+
+    // "Exif\0\0", a TIFF header, an empty IFD0 and an IFD1 pointing at the thumbnail right after it
+    private static byte[] app1(boolean littleEndian, byte[] thumbnail) {
+        int ifd0 = 8;
+        int ifd1 = ifd0 + 2 + 4;
+        int data = ifd1 + 2 + 2 * 12 + 4;
+        byte[] segment = new byte[6 + data + thumbnail.length];
+        System.arraycopy(new byte[]{'E', 'x', 'i', 'f', 0, 0}, 0, segment, 0, 6);
+        int tiff = 6;
+        segment[tiff] = segment[tiff + 1] = (byte) (littleEndian ? 'I' : 'M');
+        writeShort(segment, tiff + 2, 42, littleEndian);
+        writeInt(segment, tiff + 4, ifd0, littleEndian);
+        writeShort(segment, tiff + ifd0, 0, littleEndian);
+        writeInt(segment, tiff + ifd0 + 2, ifd1, littleEndian);
+        writeShort(segment, tiff + ifd1, 2, littleEndian);
+        int entry = tiff + ifd1 + 2;
+        writeShort(segment, entry, 0x0201, littleEndian);
+        writeInt(segment, entry + 8, data, littleEndian);
+        writeShort(segment, entry + 12, 0x0202, littleEndian);
+        writeInt(segment, entry + 12 + 8, thumbnail.length, littleEndian);
+        System.arraycopy(thumbnail, 0, segment, tiff + data, thumbnail.length);
+        return segment;
+    }
+
+    // Value position of the thumbnail length entry built by app1
+    private static int lengthFieldPosition() {
+        return 6 + 8 + 2 + 4 + 2 + 12 + 8;
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        int length = payload.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static void writeShort(byte[] data, int position, int value, boolean littleEndian) {
+        data[position + (littleEndian ? 0 : 1)] = (byte) value;
+        data[position + (littleEndian ? 1 : 0)] = (byte) (value >> 8);
+    }
+
+    private static void writeInt(byte[] data, int position, long value, boolean littleEndian) {
+        for (int i = 0; i < 4; i++) {
+            data[position + (littleEndian ? i : 3 - i)] = (byte) (value >> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package photos05.android.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import photos05.android.model.Album;
+import photos05.android.model.Photo;
+import photos05.android.model.Tag;
+import photos05.android.model.User;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks prefix and typo-tolerant tag search, including queries too short or too
+ * repetitive for the trigram filter, where every value of the type is checked.
+ */
+public class TagIndexTest {
+    private User user;
+    private Album album;
+    private int nextPhoto;
+
+    @Before
+    public void setUp() {
+        TagIndex.unload();
+        user = new User("test");
+        album = new Album("Places");
+        user.addAlbum(album);
+    }
+
+    @Test
+    public void fuzzySearch_findsTransposedLetters() throws IOException {
+        Photo paris = tagged("Location", "Paris");
+        Photo parma = tagged("Location", "Parma");
+        Photo berlin = tagged("Location", "Berlin");
+
+        List<Photo> results = new ArrayList<>(TagIndex.get(user).fuzzySearch("Location", "Parsi"));
+
+        // Both are two edits away; ties are ordered by value
+        assertEquals(Arrays.asList(paris, parma), results);
+        assertFalse(results.contains(berlin));
+    }
+
+    @Test
+    public void fuzzySearch_allowsOneTypoInShortQueries() throws IOException {
+        Photo paris = tagged("Location", "Paris");
+        tagged("Location", "Parma");
+
+        assertEquals(Collections.singleton(paris), TagIndex.get(user).fuzzySearch("Location", "Pari"));
+    }
+
+    @Test
+    public void fuzzySearch_rejectsValuesPastTheDistance() throws IOException {
+        tagged("Location", "Barcelona");
+
+        assertTrue(TagIndex.get(user).fuzzySearch("Location", "Barclnoaa").isEmpty());
+        assertEquals(1, TagIndex.get(user).fuzzySearch("Location", "barcelnoa").size());
+    }
+
+    @Test
+    public void fuzzySearch_scansAllValuesWhenTrigramsCannotFilter() throws IOException {
+        // "aaaaa" has five distinct padded trigrams, fewer than the six two edits can remove
+        Photo oneEdit = tagged("Person", "aaaab");
+        Photo twoEdits = tagged("Person", "abaab");
+        Photo threeEdits = tagged("Person", "bbaab");
+
+        Set<Photo> results = TagIndex.get(user).fuzzySearch("Person", "aaaaa");
+
+        assertEquals(Arrays.asList(oneEdit, twoEdits), new ArrayList<>(results));
+        assertFalse(results.contains(threeEdits));
+    }
+
+    @Test
+    public void fuzzySearch_singleCharacterMustMatchExactly() throws IOException {
+        Photo a = tagged("Person", "A");
+        tagged("Person", "B");
+
+        assertEquals(Collections.singleton(a), TagIndex.get(user).fuzzySearch("Person", "a"));
+    }
+
+    @Test
+    public void fuzzySearch_onlyReadsTheRequestedType() throws IOException {
+        tagged("Person", "Paris");
+
+        assertTrue(TagIndex.get(user).fuzzySearch("Location", "Paris").isEmpty());
+    }
+
+    @Test
+    public void search_matchesPrefixIgnoringCase() throws IOException {
+        Photo paris = tagged("Location", "Paris");
+        Photo parma = tagged("Location", "parma");
+        tagged("Location", "Prague");
+
+        assertEquals(Arrays.asList(paris, parma), new ArrayList<>(TagIndex.get(user).search("location", "PAR")));
+    }
+
+    @Test
+    public void tagRemoved_dropsValueFromFuzzySearch() throws IOException {
+        Photo paris = tagged("Location", "Paris");
+        TagIndex index = TagIndex.get(user);
+
+        Tag tag = paris.getTags().get(0);
+        paris.removeTag(tag);
+        index.tagRemoved(paris, tag);
+
+        assertTrue(index.fuzzySearch("Location", "Parsi").isEmpty());
+        assertEquals(0, index.getStats("Location").valueCount);
+    }
+
+    private Photo tagged(String type, String value) throws IOException {
+        Photo photo = new Photo("content://test/" + nextPhoto++);
+        photo.addTag(new Tag(type, value));
+        album.addPhoto(photo);
+        return photo;
+    }
+}